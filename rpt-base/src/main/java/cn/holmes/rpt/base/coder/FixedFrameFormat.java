@@ -0,0 +1,78 @@
+package cn.holmes.rpt.base.coder;
+
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.serialize.api.SerializationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
+
+import java.util.List;
+
+/**
+ * V1: messageLength|messageType|serializerType|metaLength|meta|data
+ * <p>
+ * 与旧版本的消息帧逐字节相同,各字段均为4个字节,没有元数据时metaLength为0;不支持流编号和压缩
+ */
+public class FixedFrameFormat extends FrameFormat {
+
+    @Override
+    public void encode(ByteBufAllocator alloc, Message message, List<Object> out) throws Exception {
+        if (message.getStreamId() != 0 || message.getCompression() != CompressionType.NONE) {
+            throw new EncoderException("V1不支持流编号和压缩:" + message.getType().getDesc());
+        }
+        ByteBuf header = alloc.buffer();
+        try {
+            // 写完后回填帧长度和元数据长度
+            header.writeInt(0);
+            header.writeInt(message.getType().getCode());
+            header.writeInt(message.getSerialization().getCode());
+            int metaLengthIndex = header.writerIndex();
+            header.writeInt(0);
+            writeMeta(message, header);
+            header.setInt(metaLengthIndex, header.writerIndex() - metaLengthIndex - 4);
+        } catch (Exception e) {
+            header.release();
+            throw e;
+        }
+        ByteBuf data = message.getData();
+        header.setInt(0, header.readableBytes() - 4 + (data == null ? 0 : data.readableBytes()));
+        addFrame(alloc, out, header, null, data);
+    }
+
+    @Override
+    public Message decode(ByteBufAllocator alloc, ByteBuf in) throws Exception {
+        if (in.readableBytes() < 4) {
+            return null;
+        }
+        int frameLength = in.getInt(in.readerIndex());
+        if (frameLength < 12) {
+            throw new CorruptedFrameException("帧长度错误:" + frameLength);
+        }
+        checkFrameLength(frameLength);
+        if (in.readableBytes() - 4 < frameLength) {
+            return null;
+        }
+        in.skipBytes(4);
+        ByteBuf frame = in.readSlice(frameLength);
+
+        Message message = new Message();
+        MessageType type = MessageType.getInstance(frame.readInt());
+        message.setType(type);
+        SerializationType serialization = SerializationType.getInstance(frame.readInt());
+        int metaLength = frame.readInt();
+        if (metaLength < 0 || metaLength > frame.readableBytes()) {
+            throw new CorruptedFrameException("元数据长度错误:" + metaLength);
+        }
+        if (metaLength > 0 && (type == null || type.hasMeta())) {
+            message.setMeta(readMeta(serialization, frame.readSlice(metaLength)));
+        } else {
+            // 旧版本在数据消息中也可能携带元数据,绑定关系已在代理连接上,不需要解析
+            frame.skipBytes(metaLength);
+        }
+        setData(alloc, message, frame);
+        return message;
+    }
+}
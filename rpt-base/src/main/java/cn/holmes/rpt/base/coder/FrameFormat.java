@@ -0,0 +1,172 @@
+package cn.holmes.rpt.base.coder;
+
+import cn.holmes.rpt.base.compress.api.Compression;
+import cn.holmes.rpt.base.compress.api.CompressionFactory;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
+import cn.holmes.rpt.base.serialize.SerializerDispatcher;
+import cn.holmes.rpt.base.serialize.api.SerializationType;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * 消息帧格式,每个连接的收发两个方向各自切换
+ * <p>
+ * 连接建立时使用与旧版本相同的V1;AUTH/CONNECTED中携带协商后的版本,该消息收发完成后本端的发送方向在下一条消息前切换为V2
+ * <p>
+ * TLS连接上发送方先结束gzip流再发出V2消息帧,接收方读到gzip流结束时切换,切换前已发出的V1消息帧不受影响;
+ * 不经过gzip的连接(不加密的代理连接)只有新版本使用,从连接建立开始即为V2
+ */
+public abstract class FrameFormat {
+
+    private static final SerializerDispatcher SERIALIZER_DISPATCHER = new SerializerDispatcher();
+
+    public static final FrameFormat V1 = new FixedFrameFormat();
+
+    public static final FrameFormat V2 = new VarintFrameFormat();
+
+    /**
+     * 单帧的最大长度,超过时在缓存帧内容前断开;控制端口接受未认证的不加密连接,不能按对端声明的长度无限缓存
+     * <p>
+     * 转发的数据按每次读取的大小成帧,远小于该值
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * 对端是否已切换为V2,切换后不再变化
+     */
+    public static boolean isInboundUpgraded(ChannelPipeline pipeline) {
+        GzipCodec gzipCodec = pipeline.get(GzipCodec.class);
+        return gzipCodec == null || !gzipCodec.isDecoding();
+    }
+
+    /**
+     * 已协商V2时结束gzip流并切换发送方向,在连接所在线程上调用
+     *
+     * @return 发送方向是否已切换为V2
+     */
+    public static boolean upgradeOutbound(ChannelHandlerContext ctx) {
+        GzipCodec gzipCodec = ctx.pipeline().get(GzipCodec.class);
+        if (gzipCodec == null || !gzipCodec.isEncoding()) {
+            return true;
+        }
+        if (ctx.channel().attr(Constants.VERSION).get() != ProtocolVersion.V2) {
+            return false;
+        }
+        // 暂存在后续处理器中的V1消息帧先经过gzip写出,再写出gzip流的结尾
+        ctx.flush();
+        gzipCodec.finish();
+        return true;
+    }
+
+    /**
+     * 收到或发出携带版本的AUTH/CONNECTED消息后记录协商结果,版本只升不降
+     */
+    public static void negotiate(Channel channel, Message message) {
+        if (message.getType() != MessageType.TYPE_AUTH && message.getType() != MessageType.TYPE_CONNECTED) {
+            return;
+        }
+        Meta meta = message.getMeta();
+        ProtocolVersion version = meta == null ? null : ProtocolVersion.getInstance(Math.min(meta.getVersion(), ProtocolVersion.CURRENT.getCode()));
+        if (version == null) {
+            return;
+        }
+        ProtocolVersion current = channel.attr(Constants.VERSION).get();
+        if (current == null || current.getCode() < version.getCode()) {
+            channel.attr(Constants.VERSION).set(version);
+        }
+    }
+
+    /**
+     * 编码为完整的消息帧,包含帧长度
+     */
+    public abstract void encode(ByteBufAllocator alloc, Message message, List<Object> out) throws Exception;
+
+    /**
+     * 可读字节不足一帧时返回null,不移动读索引
+     */
+    public abstract Message decode(ByteBufAllocator alloc, ByteBuf in) throws Exception;
+
+    /**
+     * 元数据直接序列化到缓冲区
+     */
+    protected void writeMeta(Message message, ByteBuf out) throws Exception {
+        if (message.getMeta() != null) {
+            SERIALIZER_DISPATCHER.serialize(message.getSerialization(), message.getMeta(), out);
+        }
+    }
+
+    protected Meta readMeta(SerializationType serialization, ByteBuf in) throws Exception {
+        return SERIALIZER_DISPATCHER.deserialize(serialization, in, Meta.class);
+    }
+
+    protected void checkFrameLength(int frameLength) {
+        if (frameLength > MAX_FRAME_LENGTH) {
+            throw new TooLongFrameException("帧长度超过上限:" + frameLength);
+        }
+    }
+
+    protected void setCompression(Message message, CompressionType compression) {
+        if (compression == null) {
+            throw new DecoderException("未知的压缩算法");
+        }
+        message.setCompression(compression);
+    }
+
+    /**
+     * 帧内剩余字节为消息内容
+     */
+    protected void setData(ByteBufAllocator alloc, Message message, ByteBuf frame) throws Exception {
+        if (!frame.isReadable()) {
+            return;
+        }
+        if (message.getCompression() == CompressionType.NONE) {
+            // 共享帧内存,由消息的消费方负责释放
+            message.setData(frame.readRetainedSlice(frame.readableBytes()));
+            return;
+        }
+        Compression compression = CompressionFactory.getCompression(message.getCompression());
+        if (compression == null) {
+            throw new DecoderException("不支持的压缩算法:" + message.getCompression().getDesc());
+        }
+        message.setData(compression.decompress(alloc, frame));
+        message.setCompression(CompressionType.NONE);
+    }
+
+    /**
+     * 消息内容不复制,与消息头组合后写出
+     */
+    protected void addFrame(ByteBufAllocator alloc, List<Object> out, ByteBuf header, ByteBuf meta, ByteBuf data) {
+        boolean hasMeta = meta != null && meta.isReadable();
+        boolean hasData = data != null && data.isReadable();
+        if (!hasMeta && !hasData) {
+            if (meta != null) {
+                meta.release();
+            }
+            out.add(header);
+            return;
+        }
+        CompositeByteBuf frame = alloc.compositeBuffer(3).addComponent(true, header);
+        if (hasMeta) {
+            frame.addComponent(true, meta);
+        } else if (meta != null) {
+            meta.release();
+        }
+        if (hasData) {
+            frame.addComponent(true, data.retain());
+        }
+        out.add(frame);
+    }
+}
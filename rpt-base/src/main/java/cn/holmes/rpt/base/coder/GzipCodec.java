@@ -1,14 +1,72 @@
 package cn.holmes.rpt.base.coder;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.CombinedChannelDuplexHandler;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
 import io.netty.handler.codec.compression.ZlibCodecFactory;
 import io.netty.handler.codec.compression.ZlibDecoder;
 import io.netty.handler.codec.compression.ZlibEncoder;
 import io.netty.handler.codec.compression.ZlibWrapper;
 
+import java.util.List;
+
+/**
+ * TLS连接上的gzip流,V1消息帧都经过该流传输
+ * <p>
+ * 协商V2后发送方结束gzip流,之后的字节不再压缩;接收方读到gzip流结束后移除解压,剩余字节原样向后传递
+ */
 public class GzipCodec extends CombinedChannelDuplexHandler<ZlibDecoder, ZlibEncoder> {
 
+    private boolean decoding = true;
+
+    private boolean encoding = true;
+
     public GzipCodec() {
-        super(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP), ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
+        init(new GzipDecoder(), ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
+    }
+
+    /**
+     * 对端是否仍在发送gzip流
+     */
+    public boolean isDecoding() {
+        return decoding;
+    }
+
+    public boolean isEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 写出gzip流的结尾并移除压缩,在连接所在线程上调用
+     */
+    public void finish() {
+        if (!encoding) {
+            return;
+        }
+        encoding = false;
+        outboundHandler().close();
+        removeOutboundHandler();
+    }
+
+    /**
+     * 只解压一个gzip流,流结束后从下一次解码开始移除自身
+     */
+    private class GzipDecoder extends JdkZlibDecoder {
+
+        GzipDecoder() {
+            super(ZlibWrapper.GZIP);
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            if (isClosed()) {
+                // 已解压的消息在此之前全部传递完毕,移除后剩余字节按原样传递
+                decoding = false;
+                removeInboundHandler();
+                return;
+            }
+            super.decode(ctx, in, out);
+        }
     }
 }
@@ -1,42 +1,34 @@
 package cn.holmes.rpt.base.coder;
 
 import cn.holmes.rpt.base.protocol.Message;
-import cn.holmes.rpt.base.protocol.MessageType;
-import cn.holmes.rpt.base.protocol.Meta;
-import cn.holmes.rpt.base.serialize.SerializerDispatcher;
-import cn.holmes.rpt.base.serialize.api.SerializationType;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
 
 import java.util.List;
 
 /**
- * messageLength|messageType|serializerType|metaLength|meta|data
+ * 按对端当前的协议版本拆帧并解码
+ * <p>
+ * 每解出一帧立即向后传递;对端结束gzip流后,剩余字节按V2解码
+ *
+ * @see FixedFrameFormat
+ * @see VarintFrameFormat
  */
-public class MessageDecoder extends MessageToMessageDecoder<ByteBuf> {
+public class MessageDecoder extends ByteToMessageDecoder {
 
-    private static final SerializerDispatcher SERIALIZER_DISPATCHER = new SerializerDispatcher();
+    private boolean upgraded;
 
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) throws Exception {
-        Message message = new Message();
-        // 4个字节
-        message.setType(MessageType.getInstance(byteBuf.readInt()));
-        SerializationType serialization = SerializationType.getInstance(byteBuf.readInt());
-
-        int metaByteLength = byteBuf.readInt();
-        if (metaByteLength > 0) {
-            byte[] metaByte = new byte[metaByteLength];
-            byteBuf.readBytes(metaByte);
-            Meta meta = SERIALIZER_DISPATCHER.deserialize(serialization, metaByte, Meta.class);
-            message.setMeta(meta);
+        if (!upgraded) {
+            upgraded = FrameFormat.isInboundUpgraded(channelHandlerContext.pipeline());
         }
-        if (byteBuf.isReadable()) {
-            byte[] data = ByteBufUtil.getBytes(byteBuf);
-            message.setData(data);
+        Message message = (upgraded ? FrameFormat.V2 : FrameFormat.V1).decode(channelHandlerContext.alloc(), byteBuf);
+        if (message == null) {
+            return;
         }
+        FrameFormat.negotiate(channelHandlerContext.channel(), message);
         list.add(message);
     }
 }
@@ -1,34 +1,29 @@
 package cn.holmes.rpt.base.coder;
 
 import cn.holmes.rpt.base.protocol.Message;
-import cn.holmes.rpt.base.protocol.MessageType;
-import cn.holmes.rpt.base.protocol.Meta;
-import cn.holmes.rpt.base.serialize.SerializerDispatcher;
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-import io.netty.util.internal.EmptyArrays;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
 
 /**
- * messageLength|messageType|serializerType|metaLength|meta|data
+ * 按本端已协商的协议版本编码,输出包含帧长度的完整消息帧
+ * <p>
+ * 收发AUTH/CONNECTED完成协商后,下一条消息发出前切换为V2
+ *
+ * @see FixedFrameFormat
+ * @see VarintFrameFormat
  */
-public class MessageEncoder extends MessageToByteEncoder<Message> {
+public class MessageEncoder extends MessageToMessageEncoder<Message> {
 
-    private static final SerializerDispatcher SERIALIZER_DISPATCHER = new SerializerDispatcher();
+    private boolean upgraded;
 
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, Message message, ByteBuf out) throws Exception {
-        MessageType type = message.getType();
-        out.writeInt(type.getCode());
-        out.writeInt(message.getSerialization().getCode());
-
-        Meta meta = message.getMeta();
-        byte[] metaByte = meta == null ? EmptyArrays.EMPTY_BYTES : SERIALIZER_DISPATCHER.serialize(message.getSerialization(), meta);
-        out.writeInt(metaByte.length);
-        out.writeBytes(metaByte);
-
-        if (message.getData() != null && message.getData().length > 0) {
-            out.writeBytes(message.getData());
+    protected void encode(ChannelHandlerContext channelHandlerContext, Message message, List<Object> out) throws Exception {
+        if (!upgraded) {
+            upgraded = FrameFormat.upgradeOutbound(channelHandlerContext);
         }
+        (upgraded ? FrameFormat.V2 : FrameFormat.V1).encode(channelHandlerContext.alloc(), message, out);
+        FrameFormat.negotiate(channelHandlerContext.channel(), message);
     }
 }
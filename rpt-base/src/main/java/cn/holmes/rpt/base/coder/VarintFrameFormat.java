@@ -0,0 +1,144 @@
+package cn.holmes.rpt.base.coder;
+
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.serialize.api.SerializationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.List;
+
+/**
+ * V2: messageLength(varint)|messageType(1)|streamId(varint)|compression(1)|serializerType(1)|metaLength(varint)|meta|data
+ * <p>
+ * 不携带元数据的消息: messageLength(varint)|messageType(1)|streamId(varint)|compression(1)|data
+ * <p>
+ * 非多路复用的数据消息头通常只有4到6个字节
+ */
+public class VarintFrameFormat extends FrameFormat {
+
+    /**
+     * 数据不足时的返回值
+     */
+    private static final int INCOMPLETE = -1;
+
+    @Override
+    public void encode(ByteBufAllocator alloc, Message message, List<Object> out) throws Exception {
+        MessageType type = message.getType();
+        ByteBuf data = message.getData();
+        int dataLength = data == null ? 0 : data.readableBytes();
+        ByteBuf meta = null;
+        if (type.hasMeta()) {
+            // 元数据长度需要先于元数据写出,单独序列化后与消息头组合
+            meta = alloc.buffer();
+            try {
+                writeMeta(message, meta);
+            } catch (Exception e) {
+                meta.release();
+                throw e;
+            }
+        }
+        int streamId = message.getStreamId();
+        int frameLength = 1 + varintLength(streamId) + 1 + dataLength;
+        if (meta != null) {
+            frameLength += 1 + varintLength(meta.readableBytes()) + meta.readableBytes();
+        }
+        ByteBuf header = alloc.buffer(varintLength(frameLength) + 13);
+        writeVarint(header, frameLength);
+        header.writeByte(type.getCode());
+        writeVarint(header, streamId);
+        header.writeByte(message.getCompression().getCode());
+        if (meta != null) {
+            header.writeByte(message.getSerialization().getCode());
+            writeVarint(header, meta.readableBytes());
+        }
+        addFrame(alloc, out, header, meta, data);
+    }
+
+    @Override
+    public Message decode(ByteBufAllocator alloc, ByteBuf in) throws Exception {
+        int readerIndex = in.readerIndex();
+        int frameLength = readVarint(in);
+        if (frameLength != INCOMPLETE) {
+            checkFrameLength(frameLength);
+        }
+        if (frameLength == INCOMPLETE || in.readableBytes() < frameLength) {
+            in.readerIndex(readerIndex);
+            return null;
+        }
+        ByteBuf frame = in.readSlice(frameLength);
+
+        Message message = new Message();
+        MessageType type = MessageType.getInstance(frame.readUnsignedByte());
+        message.setType(type);
+        message.setStreamId(readFrameVarint(frame));
+        setCompression(message, CompressionType.getInstance(frame.readUnsignedByte()));
+        if (type == null || type.hasMeta()) {
+            SerializationType serialization = SerializationType.getInstance(frame.readUnsignedByte());
+            int metaLength = readFrameVarint(frame);
+            if (metaLength > 0) {
+                message.setMeta(readMeta(serialization, frame.readSlice(metaLength)));
+            }
+        }
+        setData(alloc, message, frame);
+        return message;
+    }
+
+    private static int varintLength(int value) {
+        if ((value & (0xFFFFFFFF << 7)) == 0) {
+            return 1;
+        }
+        if ((value & (0xFFFFFFFF << 14)) == 0) {
+            return 2;
+        }
+        if ((value & (0xFFFFFFFF << 21)) == 0) {
+            return 3;
+        }
+        if ((value & (0xFFFFFFFF << 28)) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    private static void writeVarint(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 读取非负的varint,数据不足时返回INCOMPLETE
+     */
+    private static int readVarint(ByteBuf in) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!in.isReadable()) {
+                return INCOMPLETE;
+            }
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (result < 0) {
+                    throw new CorruptedFrameException("varint超出范围");
+                }
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("varint格式错误");
+    }
+
+    /**
+     * 帧内的varint必须完整
+     */
+    private static int readFrameVarint(ByteBuf frame) {
+        int value = readVarint(frame);
+        if (value == INCOMPLETE) {
+            throw new CorruptedFrameException("消息帧不完整");
+        }
+        return value;
+    }
+}
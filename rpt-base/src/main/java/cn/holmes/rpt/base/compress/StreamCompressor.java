@@ -0,0 +1,132 @@
+package cn.holmes.rpt.base.compress;
+
+import cn.holmes.rpt.base.compress.api.Compression;
+import cn.holmes.rpt.base.compress.api.CompressionFactory;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import cn.holmes.rpt.base.protocol.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单个穿透连接的发送端压缩,只在连接所属线程上使用
+ * <p>
+ * 压缩前抽样计算信息熵,跳过已压缩的内容(TLS、图片、视频等);
+ * 压缩率不理想时连续累计,达到阈值后按指数退避暂停压缩,之后再重新探测
+ */
+public class StreamCompressor {
+
+    /**
+     * 小于该长度的数据不压缩
+     */
+    private static final int MIN_LENGTH = 256;
+
+    private static final int SAMPLE_LENGTH = 1024;
+
+    /**
+     * 信息熵(bit/byte)高于该值视为不可压缩
+     */
+    private static final double MAX_ENTROPY = 7.5;
+
+    /**
+     * 压缩后长度超过原长度的该比例视为压缩无效
+     */
+    private static final double MAX_RATIO = 0.9;
+
+    private static final int MAX_MISSES = 8;
+
+    private static final int MAX_BACKOFF = 1024;
+
+    private final Compression compression;
+
+    private final int[] counts = new int[256];
+
+    private int misses;
+
+    private int backoff = MAX_MISSES;
+
+    private int skips;
+
+    private StreamCompressor(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 对端不支持或本地不可用的算法不启用压缩
+     *
+     * @param supported 与对端协商后双方均支持的压缩算法
+     */
+    public static StreamCompressor create(CompressionType type, List<CompressionType> supported) {
+        if (type == null || type == CompressionType.NONE || supported == null || !supported.contains(type)) {
+            return null;
+        }
+        Compression compression = CompressionFactory.getCompression(type);
+        return compression == null ? null : new StreamCompressor(compression);
+    }
+
+    /**
+     * 压缩消息内容,压缩无效时保持原样
+     */
+    public void compress(ByteBufAllocator alloc, Message message) {
+        ByteBuf data = message.getData();
+        if (data == null || data.readableBytes() < MIN_LENGTH) {
+            return;
+        }
+        if (skips > 0) {
+            skips--;
+            return;
+        }
+        if (entropy(data) > MAX_ENTROPY) {
+            miss();
+            return;
+        }
+        ByteBuf compressed;
+        try {
+            compressed = compression.compress(alloc, data);
+        } catch (Exception e) {
+            miss();
+            return;
+        }
+        if (compressed.readableBytes() > data.readableBytes() * MAX_RATIO) {
+            compressed.release();
+            miss();
+            return;
+        }
+        misses = 0;
+        backoff = MAX_MISSES;
+        data.release();
+        message.setData(compressed);
+        message.setCompression(compression.getType());
+    }
+
+    private void miss() {
+        if (++misses < MAX_MISSES) {
+            return;
+        }
+        misses = 0;
+        skips = backoff;
+        backoff = Math.min(backoff << 1, MAX_BACKOFF);
+    }
+
+    /**
+     * 抽样计算香农熵,不复制数据
+     */
+    private double entropy(ByteBuf data) {
+        int length = Math.min(data.readableBytes(), SAMPLE_LENGTH);
+        Arrays.fill(counts, 0);
+        int index = data.readerIndex();
+        for (int i = 0; i < length; i++) {
+            counts[data.getByte(index + i) & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+}
@@ -0,0 +1,23 @@
+package cn.holmes.rpt.base.compress.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+/**
+ * 单帧压缩,压缩结果自带原始长度,不依赖前后帧
+ */
+public interface Compression {
+
+    /**
+     * 单帧解压后的最大长度,防止异常数据占满内存
+     */
+    int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    CompressionType getType();
+
+    ByteBuf compress(ByteBufAllocator alloc, ByteBuf source) throws IOException;
+
+    ByteBuf decompress(ByteBufAllocator alloc, ByteBuf source) throws IOException;
+}
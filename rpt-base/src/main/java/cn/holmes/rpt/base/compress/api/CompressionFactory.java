@@ -0,0 +1,40 @@
+package cn.holmes.rpt.base.compress.api;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CompressionFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressionFactory.class);
+
+    private static final Map<CompressionType, Compression> COMPRESSION_MAP = new ConcurrentHashMap<>();
+
+    static {
+        Iterator<Compression> compressions = ServiceLoader.load(Compression.class).iterator();
+        while (compressions.hasNext()) {
+            // 依赖本地库的实现在当前平台不可用时跳过
+            try {
+                Compression compression = compressions.next();
+                COMPRESSION_MAP.put(compression.getType(), compression);
+            } catch (ServiceConfigurationError | LinkageError e) {
+                logger.info("压缩算法加载失败,{}", e.getMessage());
+            }
+        }
+    }
+
+    public static Compression getCompression(CompressionType compressionType) {
+        return COMPRESSION_MAP.get(compressionType);
+    }
+
+    /**
+     * 当前平台可用的压缩算法
+     */
+    public static List<CompressionType> getCompressionTypes() {
+        return new ArrayList<>(COMPRESSION_MAP.keySet());
+    }
+
+}
@@ -0,0 +1,38 @@
+package cn.holmes.rpt.base.compress.api;
+
+public enum CompressionType {
+
+    /**
+     *
+     */
+    NONE(0, "none"),
+    GZIP(1, "gzip"),
+    LZ4(2, "lz4"),
+    ZSTD(3, "zstd");
+
+    CompressionType(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    final int code;
+
+    final String desc;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static CompressionType getInstance(int code) {
+        for (CompressionType value : CompressionType.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,83 @@
+package cn.holmes.rpt.base.compress.gzip;
+
+import cn.holmes.rpt.base.compress.api.Compression;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 基于Deflate算法,单帧压缩时省略gzip文件头和校验
+ * <p>
+ * originalLength|deflate
+ */
+public class GzipCompression implements Compression {
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.GZIP;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readableBytes();
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        if (source.hasArray()) {
+            deflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), length);
+        } else {
+            deflater.setInput(ByteBufUtil.getBytes(source));
+        }
+        deflater.finish();
+        ByteBuf target = alloc.heapBuffer(length + (length >> 3) + 64);
+        target.writeInt(length);
+        while (!deflater.finished()) {
+            target.ensureWritable(1024);
+            int written = deflater.deflate(target.array(), target.arrayOffset() + target.writerIndex(), target.writableBytes());
+            target.writerIndex(target.writerIndex() + written);
+        }
+        return target;
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readInt();
+        if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+            throw new IOException("解压长度不合法:" + length);
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        if (source.hasArray()) {
+            inflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), source.readableBytes());
+        } else {
+            inflater.setInput(ByteBufUtil.getBytes(source));
+        }
+        ByteBuf target = alloc.heapBuffer(length, length);
+        try {
+            while (target.isWritable() && !inflater.finished()) {
+                int written = inflater.inflate(target.array(), target.arrayOffset() + target.writerIndex(), target.writableBytes());
+                if (written == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                target.writerIndex(target.writerIndex() + written);
+            }
+        } catch (DataFormatException e) {
+            target.release();
+            throw new IOException(e);
+        }
+        if (target.isWritable()) {
+            target.release();
+            throw new IOException("解压数据不完整");
+        }
+        return target;
+    }
+}
@@ -0,0 +1,77 @@
+package cn.holmes.rpt.base.compress.lz4;
+
+import cn.holmes.rpt.base.compress.api.Compression;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * originalLength|lz4 block
+ * <p>
+ * 解压使用带边界检查的解压器,压缩数据来自对端,不能信任其中的长度和偏移
+ */
+public class Lz4Compression implements Compression {
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4SafeDecompressor decompressor;
+
+    public Lz4Compression() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.LZ4;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readableBytes();
+        int maxLength = compressor.maxCompressedLength(length);
+        ByteBuf target = alloc.buffer(4 + maxLength);
+        target.writeInt(length);
+        ByteBuffer src = source.nioBuffer(source.readerIndex(), length);
+        ByteBuffer dest = target.nioBuffer(target.writerIndex(), maxLength);
+        try {
+            int written = compressor.compress(src, src.position(), length, dest, dest.position(), maxLength);
+            target.writerIndex(target.writerIndex() + written);
+        } catch (LZ4Exception e) {
+            target.release();
+            throw new IOException(e);
+        }
+        return target;
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readInt();
+        if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+            throw new IOException("解压长度不合法:" + length);
+        }
+        ByteBuf target = alloc.buffer(length, length);
+        ByteBuffer src = source.nioBuffer(source.readerIndex(), source.readableBytes());
+        ByteBuffer dest = target.nioBuffer(0, length);
+        int written;
+        try {
+            written = decompressor.decompress(src, src.position(), src.remaining(), dest, dest.position(), length);
+        } catch (LZ4Exception e) {
+            target.release();
+            throw new IOException(e);
+        }
+        if (written != length) {
+            target.release();
+            throw new IOException("解压数据不完整");
+        }
+        return target.writerIndex(length);
+    }
+}
@@ -0,0 +1,61 @@
+package cn.holmes.rpt.base.compress.zstd;
+
+import cn.holmes.rpt.base.compress.api.Compression;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import com.github.luben.zstd.Zstd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+import java.io.IOException;
+
+/**
+ * originalLength|zstd frame
+ */
+public class ZstdCompression implements Compression {
+
+    private static final int LEVEL = 3;
+
+    public ZstdCompression() {
+        // 提前加载本地库,当前平台不支持时由工厂跳过
+        Zstd.defaultCompressionLevel();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZSTD;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readableBytes();
+        byte[] src = source.hasArray() ? source.array() : ByteBufUtil.getBytes(source);
+        int srcOffset = source.hasArray() ? source.arrayOffset() + source.readerIndex() : 0;
+        int maxLength = (int) Zstd.compressBound(length);
+        ByteBuf target = alloc.heapBuffer(4 + maxLength);
+        target.writeInt(length);
+        long written = Zstd.compressByteArray(target.array(), target.arrayOffset() + target.writerIndex(), maxLength, src, srcOffset, length, LEVEL);
+        if (Zstd.isError(written)) {
+            target.release();
+            throw new IOException(Zstd.getErrorName(written));
+        }
+        return target.writerIndex(target.writerIndex() + (int) written);
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf source) throws IOException {
+        int length = source.readInt();
+        if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+            throw new IOException("解压长度不合法:" + length);
+        }
+        byte[] src = source.hasArray() ? source.array() : ByteBufUtil.getBytes(source);
+        int srcOffset = source.hasArray() ? source.arrayOffset() + source.readerIndex() : 0;
+        ByteBuf target = alloc.heapBuffer(length, length);
+        long written = Zstd.decompressByteArray(target.array(), target.arrayOffset(), length, src, srcOffset, source.readableBytes());
+        if (Zstd.isError(written) || written != length) {
+            target.release();
+            throw new IOException(Zstd.isError(written) ? Zstd.getErrorName(written) : "解压数据不完整");
+        }
+        return target.writerIndex(length);
+    }
+}
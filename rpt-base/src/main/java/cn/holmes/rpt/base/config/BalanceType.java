@@ -0,0 +1,43 @@
+package cn.holmes.rpt.base.config;
+
+public enum BalanceType {
+
+    /**
+     * 轮询
+     */
+    ROUND_ROBIN(0, "round_robin"),
+    /**
+     * 最少连接
+     */
+    LEAST_CONNECTIONS(1, "least_connections"),
+    /**
+     * 建立连接的平均耗时与当前连接数的乘积最小者优先
+     */
+    LATENCY(2, "latency");
+
+    BalanceType(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    final int code;
+
+    final String desc;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static BalanceType getInstance(int code) {
+        for (BalanceType value : BalanceType.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
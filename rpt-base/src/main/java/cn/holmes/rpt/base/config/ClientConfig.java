@@ -12,14 +12,55 @@ public class ClientConfig implements Serializable {
     private int serverPort;
     private String clientKey;
     private List<RemoteConfig> config;
+    private boolean multiplex;
+    /**
+     * 合并刷新的最大次数,读取过程中的写入在读取完成或达到该次数时统一刷新,为0则不合并
+     */
+    private int flushConsolidation = 256;
+    /**
+     * 代理连接池保持的最少闲置连接数,为0则不预热
+     */
+    private int proxyPoolMin = 4;
+    /**
+     * 代理连接池的最多闲置连接数
+     */
+    private int proxyPoolMax = 128;
+    /**
+     * 超过最少闲置连接数的部分,闲置超过该时间(秒)后关闭
+     */
+    private int proxyPoolIdleTime = 300;
+    /**
+     * 缓存的TLS会话数,按服务端地址缓存
+     */
+    private int sslSessionCacheSize = 64;
+    /**
+     * TLS会话及票据的有效时间(秒)
+     */
+    private int sslSessionTimeout = 3600;
+    /**
+     * 传输方式,默认支持epoll时使用epoll
+     */
+    private TransportType transport = TransportType.AUTO;
+    /**
+     * 不加密的独立代理连接上,不压缩的TCP穿透由内核splice转发,需使用epoll
+     */
+    private boolean splice;
+    /**
+     * 代理连接不加密,控制连接仍使用TLS,需服务端同时开启
+     */
+    private boolean plaintextProxy;
+    /**
+     * TCP参数组,穿透未配置时也使用该参数组
+     */
+    private SocketProfile socketProfile = SocketProfile.BALANCED;
 
-    public RemoteConfig getHttpConfig(String domain) {
+    public RemoteConfig getHttpConfig(String domain, String path) {
         if (config == null || config.isEmpty()) {
             return null;
         }
         for (RemoteConfig remoteConfig : config) {
             ProxyType proxyType = remoteConfig.getProxyType();
-            if (Objects.equals(ProxyType.HTTP, proxyType) && Objects.equals(domain, remoteConfig.getDomain())) {
+            if (Objects.equals(ProxyType.HTTP, proxyType) && Objects.equals(domain, remoteConfig.getDomain()) && Objects.equals(path, remoteConfig.getPath())) {
                 return remoteConfig;
             }
         }
@@ -50,6 +91,14 @@ public class ClientConfig implements Serializable {
         this.clientKey = clientKey;
     }
 
+    public boolean isMultiplex() {
+        return multiplex;
+    }
+
+    public void setMultiplex(boolean multiplex) {
+        this.multiplex = multiplex;
+    }
+
     public List<RemoteConfig> getConfig() {
         return config;
     }
@@ -57,4 +106,84 @@ public class ClientConfig implements Serializable {
     public void setConfig(List<RemoteConfig> config) {
         this.config = config;
     }
+
+    public int getFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public void setFlushConsolidation(int flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    public int getProxyPoolMin() {
+        return proxyPoolMin;
+    }
+
+    public void setProxyPoolMin(int proxyPoolMin) {
+        this.proxyPoolMin = proxyPoolMin;
+    }
+
+    public int getProxyPoolMax() {
+        return proxyPoolMax;
+    }
+
+    public void setProxyPoolMax(int proxyPoolMax) {
+        this.proxyPoolMax = proxyPoolMax;
+    }
+
+    public int getProxyPoolIdleTime() {
+        return proxyPoolIdleTime;
+    }
+
+    public void setProxyPoolIdleTime(int proxyPoolIdleTime) {
+        this.proxyPoolIdleTime = proxyPoolIdleTime;
+    }
+
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public void setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    public boolean isSplice() {
+        return splice;
+    }
+
+    public void setSplice(boolean splice) {
+        this.splice = splice;
+    }
+
+    public boolean isPlaintextProxy() {
+        return plaintextProxy;
+    }
+
+    public void setPlaintextProxy(boolean plaintextProxy) {
+        this.plaintextProxy = plaintextProxy;
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
 }
@@ -1,5 +1,7 @@
 package cn.holmes.rpt.base.config;
 
+import cn.holmes.rpt.base.compress.api.CompressionType;
+
 import java.io.Serializable;
 
 public class RemoteConfig implements Serializable {
@@ -16,6 +18,30 @@ public class RemoteConfig implements Serializable {
     private ProxyType proxyType;
     private String domain;
     private String token;
+    /**
+     * 数据压缩算法 不填写默认不压缩
+     */
+    private CompressionType compression;
+    /**
+     * HTTPS请求不在服务端解密,按SNI直接转发给内网的HTTPS服务 仅HTTP类型有效
+     */
+    private boolean passthrough;
+    /**
+     * 路径前缀,同一域名可按路径转发到不同的内网服务 仅HTTP类型有效 不填写匹配所有路径
+     */
+    private String path;
+    /**
+     * 多个客户端注册同一域名或端口时的负载均衡策略 以首个注册的客户端为准 不填写默认轮询
+     */
+    private BalanceType balance;
+    /**
+     * 会话保持方式 以首个注册的客户端为准 不填写不保持
+     */
+    private StickyType sticky;
+    /**
+     * 外部连接、内网连接及绑定的代理连接使用的TCP参数组 不填写使用全局配置
+     */
+    private SocketProfile socketProfile;
 
     public int getRemotePort() {
         return remotePort;
@@ -65,6 +91,14 @@ public class RemoteConfig implements Serializable {
         this.domain = domain;
     }
 
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionType compression) {
+        this.compression = compression;
+    }
+
     public String getToken() {
         return token;
     }
@@ -72,4 +106,44 @@ public class RemoteConfig implements Serializable {
     public void setToken(String token) {
         this.token = token;
     }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    public void setPassthrough(boolean passthrough) {
+        this.passthrough = passthrough;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public BalanceType getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BalanceType balance) {
+        this.balance = balance;
+    }
+
+    public StickyType getSticky() {
+        return sticky;
+    }
+
+    public void setSticky(StickyType sticky) {
+        this.sticky = sticky;
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
 }
@@ -13,6 +13,66 @@ public class ServerConfig {
     private String domainKey;
     private boolean ipFilter;
     private List<ServerToken> token;
+    /**
+     * 合并刷新的最大次数,读取过程中的写入在读取完成或达到该次数时统一刷新,为0则不合并
+     */
+    private int flushConsolidation = 256;
+    /**
+     * 端口穿透共用的监听线程数
+     */
+    private int remoteBossThreads = 1;
+    /**
+     * 端口穿透共用的读写线程数,为0时使用CPU核数的2倍
+     */
+    private int remoteWorkerThreads;
+    /**
+     * 客户端注册时端口绑定的超时时间,单位秒
+     */
+    private int registerTimeout = 30;
+    /**
+     * HTTP穿透只读取Host请求头后按原始数据转发,不解析HTTP请求
+     */
+    private boolean hostSniff;
+    /**
+     * 探测客户端的间隔,单位秒,为0则不探测
+     */
+    private int probeInterval = 5;
+    /**
+     * 连续未应答探测的次数达到该值时暂停向客户端分配外部连接
+     */
+    private int probeMisses = 3;
+    /**
+     * 缓存的TLS会话数
+     */
+    private int sslSessionCacheSize = 20480;
+    /**
+     * TLS会话及票据的有效时间(秒)
+     */
+    private int sslSessionTimeout = 3600;
+    /**
+     * 传输方式,默认支持epoll时使用epoll
+     */
+    private TransportType transport = TransportType.AUTO;
+    /**
+     * 不加密的独立代理连接上,不压缩的TCP穿透由内核splice转发,需使用epoll
+     */
+    private boolean splice;
+    /**
+     * 接受不加密的代理连接,控制连接仍使用TLS,代理连接凭控制连接下发的一次性令牌绑定外部连接,仅在可信网络中开启
+     */
+    private boolean plaintextProxy;
+    /**
+     * TCP参数组,穿透未配置时也使用该参数组
+     */
+    private SocketProfile socketProfile = SocketProfile.BALANCED;
+    /**
+     * HTTP端口上未注册的域名访问该路径时返回Prometheus格式的穿透统计,为空则不开启
+     */
+    private String metricsPath;
+    /**
+     * 访问统计路径的账号密码(账号:密码),为空则不校验
+     */
+    private String metricsToken;
 
     public boolean authorize(String clientKey) {
         if (token == null || token.isEmpty()) {
@@ -98,4 +158,124 @@ public class ServerConfig {
     public void setIpFilter(boolean ipFilter) {
         this.ipFilter = ipFilter;
     }
+
+    public int getFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public void setFlushConsolidation(int flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    public int getRemoteBossThreads() {
+        return remoteBossThreads;
+    }
+
+    public void setRemoteBossThreads(int remoteBossThreads) {
+        this.remoteBossThreads = remoteBossThreads;
+    }
+
+    public int getRemoteWorkerThreads() {
+        return remoteWorkerThreads;
+    }
+
+    public void setRemoteWorkerThreads(int remoteWorkerThreads) {
+        this.remoteWorkerThreads = remoteWorkerThreads;
+    }
+
+    public int getRegisterTimeout() {
+        return registerTimeout;
+    }
+
+    public void setRegisterTimeout(int registerTimeout) {
+        this.registerTimeout = registerTimeout;
+    }
+
+    public boolean isHostSniff() {
+        return hostSniff;
+    }
+
+    public void setHostSniff(boolean hostSniff) {
+        this.hostSniff = hostSniff;
+    }
+
+    public int getProbeInterval() {
+        return probeInterval;
+    }
+
+    public void setProbeInterval(int probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    public int getProbeMisses() {
+        return probeMisses;
+    }
+
+    public void setProbeMisses(int probeMisses) {
+        this.probeMisses = probeMisses;
+    }
+
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public void setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    public boolean isSplice() {
+        return splice;
+    }
+
+    public void setSplice(boolean splice) {
+        this.splice = splice;
+    }
+
+    public boolean isPlaintextProxy() {
+        return plaintextProxy;
+    }
+
+    public void setPlaintextProxy(boolean plaintextProxy) {
+        this.plaintextProxy = plaintextProxy;
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
+
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    public String getMetricsToken() {
+        return metricsToken;
+    }
+
+    public void setMetricsToken(String metricsToken) {
+        this.metricsToken = metricsToken;
+    }
 }
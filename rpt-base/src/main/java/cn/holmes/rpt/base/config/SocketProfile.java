@@ -0,0 +1,104 @@
+package cn.holmes.rpt.base.config;
+
+public enum SocketProfile {
+
+    /**
+     * 交互式穿透(远程桌面、SSH),关闭Nagle,写缓冲水位较低,背压尽早生效
+     */
+    LATENCY(0, "latency", true, 0, 0, 16 * 1024, 32 * 1024, 4096, true),
+    /**
+     * 收发缓冲区由系统自动调整
+     */
+    BALANCED(1, "balanced", true, 0, 0, 64 * 1024, 256 * 1024, 4096, true),
+    /**
+     * 大流量穿透(文件传输、备份),收发缓冲区按高带宽时延积设置,需调大系统的net.core.rmem_max/wmem_max才能完全生效
+     */
+    THROUGHPUT(2, "throughput", true, 4 * 1024 * 1024, 4 * 1024 * 1024, 1024 * 1024, 4 * 1024 * 1024, 1024, false);
+
+    SocketProfile(int code, String desc, boolean tcpNoDelay, int sendBuffer, int receiveBuffer, int writeBufferLow, int writeBufferHigh, int backlog, boolean fastOpen) {
+        this.code = code;
+        this.desc = desc;
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBuffer = sendBuffer;
+        this.receiveBuffer = receiveBuffer;
+        this.writeBufferLow = writeBufferLow;
+        this.writeBufferHigh = writeBufferHigh;
+        this.backlog = backlog;
+        this.fastOpen = fastOpen;
+    }
+
+    final int code;
+
+    final String desc;
+
+    final boolean tcpNoDelay;
+
+    /**
+     * SO_SNDBUF,为0则由系统自动调整
+     */
+    final int sendBuffer;
+
+    /**
+     * SO_RCVBUF,为0则由系统自动调整
+     */
+    final int receiveBuffer;
+
+    final int writeBufferLow;
+
+    final int writeBufferHigh;
+
+    /**
+     * 监听端口的连接队列长度,实际值不超过系统的net.core.somaxconn
+     */
+    final int backlog;
+
+    /**
+     * TCP Fast Open,仅epoll有效
+     */
+    final boolean fastOpen;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSendBuffer() {
+        return sendBuffer;
+    }
+
+    public int getReceiveBuffer() {
+        return receiveBuffer;
+    }
+
+    public int getWriteBufferLow() {
+        return writeBufferLow;
+    }
+
+    public int getWriteBufferHigh() {
+        return writeBufferHigh;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public boolean isFastOpen() {
+        return fastOpen;
+    }
+
+    public static SocketProfile getInstance(int code) {
+        for (SocketProfile value : SocketProfile.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.holmes.rpt.base.config;
+
+public enum StickyType {
+
+    /**
+     * 服务端在响应中写入Cookie,之后的请求回到同一客户端 仅HTTP类型有效
+     */
+    COOKIE(0, "cookie"),
+    /**
+     * 按来源IP选择客户端
+     */
+    SOURCE_IP(1, "source_ip");
+
+    StickyType(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    final int code;
+
+    final String desc;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static StickyType getInstance(int code) {
+        for (StickyType value : StickyType.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package cn.holmes.rpt.base.config;
+
+public enum TransportType {
+
+    /**
+     * 支持epoll时使用epoll,否则使用NIO
+     */
+    AUTO(0, "auto"),
+    /**
+     * Linux原生epoll,不可用时回退到NIO
+     */
+    EPOLL(1, "epoll"),
+    /**
+     * JDK NIO
+     */
+    NIO(2, "nio");
+
+    TransportType(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    final int code;
+
+    final String desc;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static TransportType getInstance(int code) {
+        for (TransportType value : TransportType.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package cn.holmes.rpt.base.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * 代理连接切换为原始字节流后替代消息编解码器
+ * <p>
+ * 暂存移除解码器时已读取但未解码的字节,开始内核转发前先写给对端,保证字节顺序
+ */
+public class SpliceHandler extends ChannelInboundHandlerAdapter {
+
+    private final Queue<ByteBuf> pending = new ArrayDeque<>();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            pending.offer((ByteBuf) msg);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * 写出暂存的字节
+     *
+     * @return 最后一次写出的结果
+     */
+    public ChannelFuture flush(Channel channel) {
+        ChannelFuture future = channel.newSucceededFuture();
+        ByteBuf buf;
+        while ((buf = pending.poll()) != null) {
+            future = channel.write(buf);
+        }
+        channel.flush();
+        return future;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        release();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        release();
+        ctx.fireChannelInactive();
+    }
+
+    private void release() {
+        ByteBuf buf;
+        while ((buf = pending.poll()) != null) {
+            buf.release();
+        }
+    }
+}
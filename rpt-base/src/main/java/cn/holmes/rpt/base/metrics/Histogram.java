@@ -0,0 +1,65 @@
+package cn.holmes.rpt.base.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的耗时分布,各桶独立计数,导出时再累加为Prometheus的累计分桶
+ */
+public class Histogram {
+
+    /**
+     * 各桶的上限,单位秒
+     */
+    public static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 最后一个桶为+Inf
+     */
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * @return 各桶的累计次数,最后一个元素为总次数
+     */
+    public long[] cumulative() {
+        long[] result = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i].sum();
+            result[i] = total;
+        }
+        return result;
+    }
+
+    /**
+     * 耗时总和,单位秒
+     */
+    public double getSum() {
+        return (double) sum.sum() / TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,150 @@
+package cn.holmes.rpt.base.metrics;
+
+import cn.holmes.rpt.base.config.ProxyType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按客户端秘钥和穿透(端口或域名路径)统计的流量
+ * <p>
+ * 计数器均为LongAdder,在外部连接和代理连接的线程上累加,导出时求和,不加锁
+ */
+public class TunnelMetrics {
+
+    /**
+     * 客户端秘钥+穿透 --> 统计 全局
+     */
+    private static final Map<String, TunnelMetrics> TUNNEL_METRICS_MAP = new ConcurrentHashMap<>();
+
+    private final String clientKey;
+
+    private final ProxyType proxyType;
+
+    /**
+     * 端口穿透为端口号,HTTP穿透为域名和路径
+     */
+    private final String tunnel;
+
+    /**
+     * 从外部连接读取的字节数
+     */
+    private final LongAdder bytesIn = new LongAdder();
+
+    /**
+     * 写给外部连接的字节数
+     */
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder connections = new LongAdder();
+
+    private final LongAdder active = new LongAdder();
+
+    /**
+     * 穿透连接建立前外部连接断开或客户端未能连接内网服务
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 外部连接分配给客户端到穿透连接建立完成的耗时
+     */
+    private final Histogram connectLatency = new Histogram();
+
+    /**
+     * 服务端收到客户端CONNECTED应答到外部连接与代理连接完成绑定的耗时
+     */
+    private final Histogram bindLatency = new Histogram();
+
+    private TunnelMetrics(String clientKey, ProxyType proxyType, String tunnel) {
+        this.clientKey = clientKey;
+        this.proxyType = proxyType;
+        this.tunnel = tunnel;
+    }
+
+    public static TunnelMetrics of(String clientKey, ProxyType proxyType, String tunnel) {
+        String key = clientKey + '\n' + proxyType + '\n' + tunnel;
+        TunnelMetrics metrics = TUNNEL_METRICS_MAP.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        return TUNNEL_METRICS_MAP.computeIfAbsent(key, k -> new TunnelMetrics(clientKey, proxyType, tunnel));
+    }
+
+    /**
+     * 客户端的最后一个控制连接断开后移除其统计,重新注册时从零开始
+     */
+    public static void remove(String clientKey) {
+        TUNNEL_METRICS_MAP.values().removeIf(metrics -> Objects.equals(clientKey, metrics.getClientKey()));
+    }
+
+    public static Collection<TunnelMetrics> all() {
+        return Collections.unmodifiableCollection(TUNNEL_METRICS_MAP.values());
+    }
+
+    public void open() {
+        connections.increment();
+        active.increment();
+    }
+
+    /**
+     * @param bound 穿透连接是否已建立,未建立时计为一次失败
+     */
+    public void close(boolean bound) {
+        active.decrement();
+        if (!bound) {
+            failures.increment();
+        }
+    }
+
+    public void received(int size) {
+        bytesIn.add(size);
+    }
+
+    public void sent(int size) {
+        bytesOut.add(size);
+    }
+
+    public String getClientKey() {
+        return clientKey;
+    }
+
+    public ProxyType getProxyType() {
+        return proxyType;
+    }
+
+    public String getTunnel() {
+        return tunnel;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getActive() {
+        return active.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public Histogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    public Histogram getBindLatency() {
+        return bindLatency;
+    }
+}
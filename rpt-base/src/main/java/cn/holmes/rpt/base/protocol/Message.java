@@ -1,19 +1,34 @@
 package cn.holmes.rpt.base.protocol;
 
+import cn.holmes.rpt.base.compress.api.CompressionType;
 import cn.holmes.rpt.base.serialize.api.SerializationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
 
 /**
  * 客户端-服务器自定义通信协议
+ * <p>
+ * 引用计数委托给消息内容,消息内容在编解码和转发过程中不再复制
  */
-public class Message {
+public class Message implements ReferenceCounted {
 
     /**
      * 消息类型
      */
     private MessageType type;
 
+    /**
+     * 多路复用时的逻辑流编号,0表示使用独立的代理连接
+     */
+    private int streamId;
+
     private SerializationType serialization = SerializationType.PROTOSTUFF;
 
+    /**
+     * 消息内容的压缩算法
+     */
+    private CompressionType compression = CompressionType.NONE;
+
     /**
      * 元数据
      */
@@ -22,13 +37,13 @@ public class Message {
     /**
      * 消息内容
      */
-    private byte[] data;
+    private ByteBuf data;
 
     public Message() {
 
     }
 
-    public Message(MessageType type, Meta meta, byte[] data) {
+    public Message(MessageType type, Meta meta, ByteBuf data) {
         this.meta = meta;
         this.data = data;
         this.type = type;
@@ -42,11 +57,11 @@ public class Message {
         this.meta = meta;
     }
 
-    public byte[] getData() {
+    public ByteBuf getData() {
         return data;
     }
 
-    public void setData(byte[] data) {
+    public void setData(ByteBuf data) {
         this.data = data;
     }
 
@@ -58,6 +73,15 @@ public class Message {
         this.type = type;
     }
 
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public Message setStreamId(int streamId) {
+        this.streamId = streamId;
+        return this;
+    }
+
     public SerializationType getSerialization() {
         return serialization;
     }
@@ -65,4 +89,59 @@ public class Message {
     public void setSerialization(SerializationType serialization) {
         this.serialization = serialization;
     }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionType compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public int refCnt() {
+        return data == null ? 1 : data.refCnt();
+    }
+
+    @Override
+    public Message retain() {
+        if (data != null) {
+            data.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public Message retain(int increment) {
+        if (data != null) {
+            data.retain(increment);
+        }
+        return this;
+    }
+
+    @Override
+    public Message touch() {
+        if (data != null) {
+            data.touch();
+        }
+        return this;
+    }
+
+    @Override
+    public Message touch(Object hint) {
+        if (data != null) {
+            data.touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return data != null && data.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return data != null && data.release(decrement);
+    }
 }
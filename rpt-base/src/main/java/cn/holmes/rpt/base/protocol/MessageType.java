@@ -10,17 +10,30 @@ public enum MessageType {
     TYPE_CONNECTED(3, "建立连接"),
     TYPE_DISCONNECTED(4, "断开连接"),
     TYPE_KEEPALIVE(5, "心跳"),
-    TYPE_DATA(6, "数据传输");
+    TYPE_DATA(6, "数据传输", false),
+    TYPE_WINDOW_UPDATE(7, "窗口更新", false),
+    TYPE_PING(8, "探测", false),
+    TYPE_PONG(9, "探测应答", false);
 
     MessageType(int code, String desc) {
+        this(code, desc, true);
+    }
+
+    MessageType(int code, String desc, boolean hasMeta) {
         this.code = code;
         this.desc = desc;
+        this.hasMeta = hasMeta;
     }
 
     final int code;
 
     final String desc;
 
+    /**
+     * 是否携带元数据,不携带元数据的消息只有消息类型和消息内容,依赖代理连接上已绑定的连接关系
+     */
+    final boolean hasMeta;
+
     public int getCode() {
         return code;
     }
@@ -29,6 +42,10 @@ public enum MessageType {
         return desc;
     }
 
+    public boolean hasMeta() {
+        return hasMeta;
+    }
+
     public static MessageType getInstance(int code) {
         for (MessageType value : MessageType.values()) {
             if (value.code == code) {
@@ -1,5 +1,6 @@
 package cn.holmes.rpt.base.protocol;
 
+import cn.holmes.rpt.base.compress.api.CompressionType;
 import cn.holmes.rpt.base.config.RemoteConfig;
 
 import java.util.Collections;
@@ -7,12 +8,34 @@ import java.util.List;
 
 public class Meta {
 
+    /**
+     * protostuff按声明顺序为字段编号,新增字段只能追加在末尾
+     */
     private String clientKey;
     private boolean connection;
     private String channelId;
     private String serverId;
     private List<RemoteConfig> remoteConfigList;
     private List<String> remoteResult;
+    private boolean multiplex;
+    private int version;
+    private List<CompressionType> compressionList;
+    /**
+     * 客户端是否应答探测消息,旧版本客户端不识别探测消息
+     */
+    private boolean probe;
+    /**
+     * CONNECTED请求中表示服务端可以由内核转发,应答中表示客户端已切换为原始字节流
+     */
+    private boolean splice;
+    /**
+     * AUTH应答中表示服务端接受不加密的代理连接
+     */
+    private boolean plaintext;
+    /**
+     * CONNECTED请求中下发的一次性令牌,客户端在代理连接上应答CONNECTED时带回
+     */
+    private String token;
 
     public Meta() {
 
@@ -46,6 +69,24 @@ public class Meta {
         return this;
     }
 
+    public boolean isMultiplex() {
+        return multiplex;
+    }
+
+    public Meta setMultiplex(boolean multiplex) {
+        this.multiplex = multiplex;
+        return this;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Meta setVersion(int version) {
+        this.version = version;
+        return this;
+    }
+
     public String getChannelId() {
         return channelId;
 
@@ -90,10 +131,55 @@ public class Meta {
         return this;
     }
 
+    public List<CompressionType> getCompressionList() {
+        return compressionList;
+    }
+
+    public Meta setCompressionList(List<CompressionType> compressionList) {
+        this.compressionList = compressionList;
+        return this;
+    }
+
     public Meta addRemoteResult(String remoteResult) {
         if (this.remoteResult != null) {
             this.remoteResult.add(remoteResult);
         }
         return this;
     }
+
+    public boolean isProbe() {
+        return probe;
+    }
+
+    public Meta setProbe(boolean probe) {
+        this.probe = probe;
+        return this;
+    }
+
+    public boolean isSplice() {
+        return splice;
+    }
+
+    public Meta setSplice(boolean splice) {
+        this.splice = splice;
+        return this;
+    }
+
+    public boolean isPlaintext() {
+        return plaintext;
+    }
+
+    public Meta setPlaintext(boolean plaintext) {
+        this.plaintext = plaintext;
+        return this;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Meta setToken(String token) {
+        this.token = token;
+        return this;
+    }
 }
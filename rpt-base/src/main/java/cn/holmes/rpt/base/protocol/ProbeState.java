@@ -0,0 +1,63 @@
+package cn.holmes.rpt.base.protocol;
+
+/**
+ * 控制连接的探测状态,只在控制连接所在的线程上更新,其他线程只读取
+ */
+public class ProbeState {
+
+    /**
+     * 最近一次探测的往返耗时,单位纳秒,为0时尚未收到应答,导出到统计页面
+     */
+    private volatile long rtt;
+
+    /**
+     * 连续未应答的次数
+     */
+    private volatile int misses;
+
+    private volatile boolean healthy = true;
+
+    /**
+     * 尚未应答的探测的发送时间,为0时没有未应答的探测
+     */
+    private long sent;
+
+    /**
+     * 发送新的探测前调用,上一次探测仍未应答时计为一次未应答
+     *
+     * @return 本次探测的发送时间
+     */
+    public long send(int maxMisses) {
+        if (sent != 0) {
+            misses++;
+            healthy = misses < maxMisses;
+        }
+        sent = System.nanoTime();
+        return sent;
+    }
+
+    /**
+     * 收到应答,迟到的应答同样说明连接可用
+     */
+    public void receive(long time) {
+        long now = System.nanoTime();
+        rtt = now - time;
+        if (time == sent) {
+            sent = 0;
+        }
+        misses = 0;
+        healthy = true;
+    }
+
+    public long getRtt() {
+        return rtt;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+}
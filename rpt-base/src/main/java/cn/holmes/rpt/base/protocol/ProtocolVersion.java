@@ -0,0 +1,44 @@
+package cn.holmes.rpt.base.protocol;
+
+public enum ProtocolVersion {
+
+    /**
+     * 消息头各字段均为4个字节
+     */
+    V1(1, "定长消息头"),
+    /**
+     * 长度和流编号使用varint,类型字段使用单字节
+     */
+    V2(2, "变长消息头");
+
+    /**
+     * 当前支持的最高版本,注册时发送给服务端协商
+     */
+    public static final ProtocolVersion CURRENT = V2;
+
+    ProtocolVersion(int code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    final int code;
+
+    final String desc;
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public static ProtocolVersion getInstance(int code) {
+        for (ProtocolVersion value : ProtocolVersion.values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,52 @@
+package cn.holmes.rpt.base.protocol;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个穿透连接的流量窗口
+ * <p>
+ * 发送方每发送一次数据扣减发送窗口,窗口耗尽时暂停读取;
+ * 接收方在数据写出后累计已消费字节数,达到阈值后通过TYPE_WINDOW_UPDATE归还给发送方
+ */
+public class StreamWindow {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024;
+
+    private static final int UPDATE_THRESHOLD = DEFAULT_WINDOW_SIZE / 4;
+
+    private final AtomicInteger sendWindow = new AtomicInteger(DEFAULT_WINDOW_SIZE);
+
+    private final AtomicInteger consumed = new AtomicInteger();
+
+    /**
+     * 发送数据后扣减窗口
+     *
+     * @return 窗口是否仍然可用
+     */
+    public boolean consume(int size) {
+        return sendWindow.addAndGet(-size) > 0;
+    }
+
+    /**
+     * 收到对端归还的窗口
+     */
+    public void increase(int credit) {
+        sendWindow.addAndGet(credit);
+    }
+
+    public boolean isWritable() {
+        return sendWindow.get() > 0;
+    }
+
+    /**
+     * 数据写出后累计已消费字节数
+     *
+     * @return 需要归还给发送方的窗口大小,未达到阈值时为0
+     */
+    public int release(int size) {
+        if (consumed.addAndGet(size) < UPDATE_THRESHOLD) {
+            return 0;
+        }
+        return consumed.getAndSet(0);
+    }
+}
@@ -1,27 +1,25 @@
 package cn.holmes.rpt.base.serialize;
 
 import cn.holmes.rpt.base.serialize.api.*;
+import io.netty.buffer.ByteBuf;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 public class SerializerDispatcher {
 
-    public byte[] serialize(SerializationType serializationType, Object obj) throws Exception {
-        Serialization serialization = SerializeFactory.getSerialization(serializationType);
-        ByteArrayOutputStream byteBufOutputStream = new ByteArrayOutputStream();
-        try (ObjectOutputStream objectOutputStream = serialization.serialize(byteBufOutputStream)) {
-            objectOutputStream.writeObject(obj);
-            objectOutputStream.flush();
-            return byteBufOutputStream.toByteArray();
-        }
+    public void serialize(SerializationType serializationType, Object obj, ByteBuf output) throws Exception {
+        getSerialization(serializationType).writeObject(output, obj);
+    }
+
+    public <T> T deserialize(SerializationType serializationType, ByteBuf input, Class<T> clazz) throws Exception {
+        return getSerialization(serializationType).readObject(input, clazz);
     }
 
-    public <T> T deserialize(SerializationType serializationType, byte[] data, Class<T> clazz) throws Exception {
-        Serialization serialization = SerializeFactory.getSerialization(serializationType);
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
-        try (ObjectInputStream objectInputStream = serialization.deserialize(byteArrayInputStream)) {
-            return objectInputStream.readObject(clazz);
+    private Serialization getSerialization(SerializationType serializationType) throws IOException {
+        Serialization serialization = serializationType == null ? null : SerializeFactory.getSerialization(serializationType);
+        if (serialization == null) {
+            throw new IOException("不支持的序列化方式:" + serializationType);
         }
+        return serialization;
     }
 }
@@ -1,6 +1,10 @@
 package cn.holmes.rpt.base.serialize.api;
 
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -12,4 +16,23 @@ public interface Serialization {
     ObjectOutputStream serialize(OutputStream output) throws IOException;
 
     ObjectInputStream deserialize(InputStream input) throws IOException;
+
+    /**
+     * 直接写入编码缓冲区,不经过中间字节数组
+     */
+    default void writeObject(ByteBuf output, Object obj) throws IOException {
+        try (ObjectOutputStream objectOutputStream = serialize(new ByteBufOutputStream(output))) {
+            objectOutputStream.writeObject(obj);
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * 从解码缓冲区直接读取,读取范围为可读字节
+     */
+    default <T> T readObject(ByteBuf input, Class<T> clazz) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = deserialize(new ByteBufInputStream(input))) {
+            return objectInputStream.readObject(clazz);
+        }
+    }
 }
@@ -4,10 +4,14 @@ import cn.holmes.rpt.base.serialize.api.ObjectInputStream;
 import cn.holmes.rpt.base.serialize.api.ObjectOutputStream;
 import cn.holmes.rpt.base.serialize.api.Serialization;
 import cn.holmes.rpt.base.serialize.api.SerializationType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 public class JsonSerialization implements Serialization {
 
@@ -25,4 +29,16 @@ public class JsonSerialization implements Serialization {
     public ObjectInputStream deserialize(final InputStream input) throws IOException {
         return new JsonDataInputStream(input);
     }
+
+    @Override
+    public void writeObject(ByteBuf output, Object obj) throws IOException {
+        JacksonUtil.getJsonMapper().writeValue((OutputStream) new ByteBufOutputStream(output), obj);
+        // 与JsonDataOutputStream相同按行写出
+        output.writeCharSequence(System.lineSeparator(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T readObject(ByteBuf input, Class<T> clazz) throws IOException {
+        return JacksonUtil.getJsonMapper().readValue((InputStream) new ByteBufInputStream(input), clazz);
+    }
 }
@@ -1,15 +1,17 @@
 package cn.holmes.rpt.base.serialize.protostuff;
 
 import cn.holmes.rpt.base.serialize.api.ObjectInputStream;
-import cn.holmes.rpt.base.serialize.protostuff.utils.WrapperUtils;
+import cn.holmes.rpt.base.serialize.protostuff.utils.SchemaUtils;
 import io.protostuff.GraphIOUtil;
 import io.protostuff.Schema;
-import io.protostuff.runtime.RuntimeSchema;
 
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * classNameLength|bytesLength|className|bytes
+ */
 public class ProtostuffDataInputStream implements ObjectInputStream {
 
     private final DataInputStream dis;
@@ -34,21 +36,13 @@ public class ProtostuffDataInputStream implements ObjectInputStream {
         byte[] bytes = new byte[bytesLength];
         dis.readFully(bytes, 0, bytesLength);
 
-        String className = new String(classNameBytes);
-        Class clazz = Class.forName(className);
-
-        Object result;
-        if (WrapperUtils.needWrapper(clazz)) {
-            Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
-            Wrapper wrapper = schema.newMessage();
-            GraphIOUtil.mergeFrom(bytes, wrapper, schema);
-            result = wrapper.getData();
-        } else {
-            Schema schema = RuntimeSchema.getSchema(clazz);
-            result = schema.newMessage();
-            GraphIOUtil.mergeFrom(bytes, result, schema);
+        Class clazz = Class.forName(new String(classNameBytes));
+        Schema schema = SchemaUtils.getSchema(clazz);
+        Object result = schema.newMessage();
+        GraphIOUtil.mergeFrom(bytes, result, schema);
+        if (result instanceof Wrapper) {
+            result = ((Wrapper) result).getData();
         }
-
         return (T) result;
     }
 
@@ -1,19 +1,20 @@
 package cn.holmes.rpt.base.serialize.protostuff;
 
 import cn.holmes.rpt.base.serialize.api.ObjectOutputStream;
+import cn.holmes.rpt.base.serialize.protostuff.utils.SchemaUtils;
 import cn.holmes.rpt.base.serialize.protostuff.utils.WrapperUtils;
 import io.protostuff.GraphIOUtil;
 import io.protostuff.LinkedBuffer;
-import io.protostuff.Schema;
-import io.protostuff.runtime.RuntimeSchema;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+/**
+ * classNameLength|bytesLength|className|bytes
+ */
 public class ProtostuffDataOutputStream implements ObjectOutputStream {
 
-    private final LinkedBuffer buffer = LinkedBuffer.allocate();
     private final DataOutputStream dos;
 
     public ProtostuffDataOutputStream(OutputStream outputStream) {
@@ -23,24 +24,17 @@ public class ProtostuffDataOutputStream implements ObjectOutputStream {
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public void writeObject(Object obj) throws IOException {
+        Object target = obj == null || WrapperUtils.needWrapper(obj) ? new Wrapper(obj) : obj;
+        LinkedBuffer buffer = SchemaUtils.getBuffer();
         byte[] bytes;
-        byte[] classNameBytes;
-
         try {
-            if (obj == null || WrapperUtils.needWrapper(obj)) {
-                Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
-                Wrapper wrapper = new Wrapper(obj);
-                bytes = GraphIOUtil.toByteArray(wrapper, schema, buffer);
-                classNameBytes = Wrapper.class.getName().getBytes();
-            } else {
-                Schema schema = RuntimeSchema.getSchema(obj.getClass());
-                bytes = GraphIOUtil.toByteArray(obj, schema, buffer);
-                classNameBytes = obj.getClass().getName().getBytes();
-            }
+            bytes = GraphIOUtil.toByteArray(target, SchemaUtils.getSchema((Class) target.getClass()), buffer);
         } finally {
             buffer.clear();
         }
 
+        byte[] classNameBytes = target.getClass().getName().getBytes();
+
         dos.writeInt(classNameBytes.length);
         dos.writeInt(bytes.length);
         dos.write(classNameBytes);
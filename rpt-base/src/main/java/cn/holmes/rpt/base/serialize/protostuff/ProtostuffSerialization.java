@@ -4,11 +4,23 @@ import cn.holmes.rpt.base.serialize.api.ObjectInputStream;
 import cn.holmes.rpt.base.serialize.api.ObjectOutputStream;
 import cn.holmes.rpt.base.serialize.api.Serialization;
 import cn.holmes.rpt.base.serialize.api.SerializationType;
+import cn.holmes.rpt.base.serialize.protostuff.utils.SchemaUtils;
+import cn.holmes.rpt.base.serialize.protostuff.utils.WrapperUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.protostuff.GraphIOUtil;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Schema;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 
+/**
+ * 直接读写ByteBuf时与流的格式相同: classNameLength|bytesLength|className|bytes,bytesLength在写完后回填
+ */
 public class ProtostuffSerialization implements Serialization {
 
     @Override
@@ -25,4 +37,51 @@ public class ProtostuffSerialization implements Serialization {
     public ObjectInputStream deserialize(InputStream input) throws IOException {
         return new ProtostuffDataInputStream(input);
     }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public void writeObject(ByteBuf output, Object obj) throws IOException {
+        Object target = obj == null || WrapperUtils.needWrapper(obj) ? new Wrapper(obj) : obj;
+        byte[] classNameBytes = target.getClass().getName().getBytes();
+        output.writeInt(classNameBytes.length);
+        int lengthIndex = output.writerIndex();
+        output.writeInt(0);
+        output.writeBytes(classNameBytes);
+        int bytesIndex = output.writerIndex();
+        LinkedBuffer buffer = SchemaUtils.getBuffer();
+        try {
+            GraphIOUtil.writeTo(new ByteBufOutputStream(output), target, SchemaUtils.getSchema((Class) target.getClass()), buffer);
+        } finally {
+            buffer.clear();
+        }
+        output.setInt(lengthIndex, output.writerIndex() - bytesIndex);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public <T> T readObject(ByteBuf input, Class<T> clazz) throws IOException, ClassNotFoundException {
+        int classNameLength = input.readInt();
+        int bytesLength = input.readInt();
+        if (classNameLength < 0 || bytesLength < 0 || (long) classNameLength + bytesLength > input.readableBytes()) {
+            throw new IOException();
+        }
+        String className = input.readCharSequence(classNameLength, Charset.defaultCharset()).toString();
+        Schema schema = SchemaUtils.getSchema(Class.forName(className));
+        Object result = schema.newMessage();
+        if (input.hasArray()) {
+            GraphIOUtil.mergeFrom(input.array(), input.arrayOffset() + input.readerIndex(), bytesLength, result, schema);
+            input.skipBytes(bytesLength);
+        } else {
+            LinkedBuffer buffer = SchemaUtils.getBuffer();
+            try {
+                GraphIOUtil.mergeFrom(new ByteBufInputStream(input, bytesLength), result, schema, buffer);
+            } finally {
+                buffer.clear();
+            }
+        }
+        if (result instanceof Wrapper) {
+            result = ((Wrapper) result).getData();
+        }
+        return (T) result;
+    }
 }
@@ -0,0 +1,33 @@
+package cn.holmes.rpt.base.serialize.protostuff.utils;
+
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存Schema及序列化缓冲区
+ */
+public class SchemaUtils {
+
+    private static final Map<Class<?>, Schema<?>> SCHEMA_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 序列化在IO线程上执行,每个线程复用一个缓冲区
+     */
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(LinkedBuffer::allocate);
+
+    @SuppressWarnings("unchecked")
+    public static <T> Schema<T> getSchema(Class<T> clazz) {
+        return (Schema<T>) SCHEMA_MAP.computeIfAbsent(clazz, RuntimeSchema::getSchema);
+    }
+
+    /**
+     * 获取当前线程的缓冲区,使用完毕后需要clear
+     */
+    public static LinkedBuffer getBuffer() {
+        return BUFFER.get();
+    }
+}
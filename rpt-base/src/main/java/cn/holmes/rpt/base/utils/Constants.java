@@ -1,12 +1,20 @@
 package cn.holmes.rpt.base.utils;
 
+import cn.holmes.rpt.base.compress.StreamCompressor;
+import cn.holmes.rpt.base.compress.api.CompressionType;
+import cn.holmes.rpt.base.handler.SpliceHandler;
+import cn.holmes.rpt.base.metrics.TunnelMetrics;
+import cn.holmes.rpt.base.protocol.ProbeState;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
+import cn.holmes.rpt.base.protocol.StreamWindow;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.AttributeKey;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public interface Constants {
@@ -14,17 +22,31 @@ public interface Constants {
     AttributeKey<Map<String, Channel>> CHANNELS = AttributeKey.newInstance("CHANNELS");
     AttributeKey<Channel> PROXY = AttributeKey.newInstance("PROXY");
     AttributeKey<Channel> LOCAL = AttributeKey.newInstance("LOCAL");
+    AttributeKey<Map<Integer, Channel>> STREAMS = AttributeKey.newInstance("STREAMS");
+    AttributeKey<Integer> STREAM_ID = AttributeKey.newInstance("STREAM_ID");
+    AttributeKey<StreamWindow> WINDOW = AttributeKey.newInstance("WINDOW");
+    AttributeKey<StreamCompressor> COMPRESSOR = AttributeKey.newInstance("COMPRESSOR");
+    AttributeKey<List<CompressionType>> COMPRESSIONS = AttributeKey.newInstance("COMPRESSIONS");
+    AttributeKey<ProtocolVersion> VERSION = AttributeKey.newInstance("VERSION");
+    AttributeKey<Queue<Runnable>> PENDING = AttributeKey.newInstance("PENDING");
+    AttributeKey<SpliceHandler> SPLICE = AttributeKey.newInstance("SPLICE");
 
     interface Server {
         AttributeKey<String> CLIENT_KEY = AttributeKey.newInstance("CLIENT_KEY");
         AttributeKey<Class<Void>> LABEL = AttributeKey.newInstance("LABEL");
         AttributeKey<List<String>> DOMAIN = AttributeKey.newInstance("DOMAIN");
-        AttributeKey<NioEventLoopGroup> REMOTE_BOSS_GROUP = AttributeKey.newInstance("REMOTE_BOSS_GROUP");
-        AttributeKey<NioEventLoopGroup> REMOTE_WORKER_GROUP = AttributeKey.newInstance("REMOTE_WORKER_GROUP");
+        AttributeKey<List<Integer>> REMOTE_PORTS = AttributeKey.newInstance("REMOTE_PORTS");
+        AttributeKey<AtomicInteger> STREAM_SEQUENCE = AttributeKey.newInstance("STREAM_SEQUENCE");
+        AttributeKey<ProbeState> PROBE = AttributeKey.newInstance("PROBE");
+        AttributeKey<String> TOKEN = AttributeKey.newInstance("TOKEN");
+        AttributeKey<TunnelMetrics> METRICS = AttributeKey.newInstance("METRICS");
     }
 
     interface Client {
         AttributeKey<Application<Bootstrap>> APPLICATION = AttributeKey.newInstance("APPLICATION");
+        AttributeKey<Long> IDLE_TIME = AttributeKey.newInstance("IDLE_TIME");
+        AttributeKey<Long> ALIVE_TIME = AttributeKey.newInstance("ALIVE_TIME");
+        AttributeKey<Bootstrap> PROXY_BOOTSTRAP = AttributeKey.newInstance("PROXY_BOOTSTRAP");
     }
 
     interface Desktop {
@@ -0,0 +1,63 @@
+package cn.holmes.rpt.base.utils;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * 外部连接迁移到代理连接所在的线程,转发数据不再跨线程
+ * <p>
+ * 迁移由目标线程发起,迁移期间目标线程上对该连接的操作排队,迁移完成后在目标线程上按顺序执行
+ */
+public class EventLoopUtils {
+
+    /**
+     * 在目标线程上调用,连接已在目标线程上时直接执行回调
+     */
+    public static void migrate(Channel channel, EventLoop eventLoop, Runnable callback) {
+        if (channel.eventLoop() == eventLoop || !channel.isRegistered()) {
+            callback.run();
+            return;
+        }
+        channel.attr(Constants.PENDING).set(new ArrayDeque<>());
+        channel.deregister().addListener(deregisterFuture -> {
+            if (!deregisterFuture.isSuccess()) {
+                execute(eventLoop, () -> complete(channel, callback));
+                return;
+            }
+            // 注册失败时连接会被关闭,排队的操作仍需执行以释放数据
+            eventLoop.register(channel).addListener(registerFuture -> execute(eventLoop, () -> complete(channel, callback)));
+        });
+    }
+
+    /**
+     * 在目标线程上调用,连接迁移中时排队等待迁移完成
+     */
+    public static void execute(Channel channel, Runnable task) {
+        Queue<Runnable> pending = channel.attr(Constants.PENDING).get();
+        if (pending == null) {
+            task.run();
+            return;
+        }
+        pending.offer(task);
+    }
+
+    private static void complete(Channel channel, Runnable callback) {
+        Queue<Runnable> pending = channel.attr(Constants.PENDING).getAndSet(null);
+        Runnable task;
+        while (pending != null && (task = pending.poll()) != null) {
+            task.run();
+        }
+        callback.run();
+    }
+
+    private static void execute(EventLoop eventLoop, Runnable task) {
+        if (eventLoop.inEventLoop()) {
+            task.run();
+        } else {
+            eventLoop.execute(task);
+        }
+    }
+}
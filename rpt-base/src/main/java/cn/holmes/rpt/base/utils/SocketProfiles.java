@@ -0,0 +1,141 @@
+package cn.holmes.rpt.base.utils;
+
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.SocketProfile;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按参数组设置连接的TCP参数
+ * <p>
+ * 监听端口和主动建立的连接在启动器上设置;连接池中的代理连接和HTTP外部连接在绑定穿透时按穿透配置重新设置。
+ * 各角色(control控制连接、proxy代理连接、external外部连接、local内网连接)按参数组统计连接数,
+ * 首次出现时读取系统实际生效的值并打印,系统会调整收发缓冲区的大小
+ */
+public class SocketProfiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketProfiles.class);
+
+    /**
+     * 服务端TCP Fast Open的等待队列长度
+     */
+    private static final int FAST_OPEN_QUEUE = 256;
+
+    /**
+     * 角色 --> 参数组 --> 连接数
+     */
+    private static final Map<String, Map<SocketProfile, LongAdder>> CHANNELS = new ConcurrentHashMap<>();
+
+    /**
+     * 角色 --> 参数组 --> 实际生效的参数
+     */
+    private static final Map<String, Map<SocketProfile, Map<String, Integer>>> EFFECTIVE = new ConcurrentHashMap<>();
+
+    private SocketProfiles() {
+    }
+
+    /**
+     * 穿透未配置时使用全局配置
+     */
+    public static SocketProfile of(RemoteConfig remoteConfig, SocketProfile global) {
+        return Optional.ofNullable(remoteConfig).map(RemoteConfig::getSocketProfile).orElse(of(global));
+    }
+
+    public static SocketProfile of(SocketProfile global) {
+        return Optional.ofNullable(global).orElse(SocketProfile.BALANCED);
+    }
+
+    public static Bootstrap apply(Bootstrap bootstrap, SocketProfile profile) {
+        bootstrap.option(ChannelOption.SO_KEEPALIVE, true).option(ChannelOption.TCP_NODELAY, profile.isTcpNoDelay())
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(profile.getWriteBufferLow(), profile.getWriteBufferHigh()));
+        if (profile.getSendBuffer() > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, profile.getSendBuffer());
+        }
+        if (profile.getReceiveBuffer() > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, profile.getReceiveBuffer());
+        }
+        if (profile.isFastOpen() && TransportFactory.isEpoll(bootstrap.config().group())) {
+            bootstrap.option(ChannelOption.TCP_FASTOPEN_CONNECT, true);
+        }
+        return bootstrap;
+    }
+
+    public static ServerBootstrap apply(ServerBootstrap bootstrap, SocketProfile profile) {
+        bootstrap.option(ChannelOption.SO_BACKLOG, profile.getBacklog());
+        if (profile.getReceiveBuffer() > 0) {
+            // 接收窗口的扩大因子在握手时确定,需在监听端口上设置
+            bootstrap.option(ChannelOption.SO_RCVBUF, profile.getReceiveBuffer());
+        }
+        if (profile.isFastOpen() && TransportFactory.isEpoll(bootstrap.config().group())) {
+            bootstrap.option(ChannelOption.TCP_FASTOPEN, FAST_OPEN_QUEUE);
+        }
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true).childOption(ChannelOption.TCP_NODELAY, profile.isTcpNoDelay())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(profile.getWriteBufferLow(), profile.getWriteBufferHigh()));
+        if (profile.getSendBuffer() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, profile.getSendBuffer());
+        }
+        if (profile.getReceiveBuffer() > 0) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, profile.getReceiveBuffer());
+        }
+        return bootstrap;
+    }
+
+    /**
+     * 已建立的连接按穿透配置重新设置,收发缓冲区设置后不再由系统自动调整,放回连接池的代理连接保留已设置的大小
+     */
+    public static void apply(Channel channel, SocketProfile profile) {
+        ChannelConfig config = channel.config();
+        config.setOption(ChannelOption.TCP_NODELAY, profile.isTcpNoDelay());
+        config.setWriteBufferWaterMark(new WriteBufferWaterMark(profile.getWriteBufferLow(), profile.getWriteBufferHigh()));
+        if (profile.getSendBuffer() > 0) {
+            config.setOption(ChannelOption.SO_SNDBUF, profile.getSendBuffer());
+        }
+        if (profile.getReceiveBuffer() > 0) {
+            config.setOption(ChannelOption.SO_RCVBUF, profile.getReceiveBuffer());
+        }
+    }
+
+    /**
+     * 统计连接数,每个角色的每个参数组首次出现时读取实际生效的参数
+     */
+    public static void record(String role, SocketProfile profile, Channel channel) {
+        CHANNELS.computeIfAbsent(role, key -> new ConcurrentHashMap<>()).computeIfAbsent(profile, key -> new LongAdder()).increment();
+        Map<SocketProfile, Map<String, Integer>> effectiveMap = EFFECTIVE.computeIfAbsent(role, key -> new ConcurrentHashMap<>());
+        if (!effectiveMap.containsKey(profile)) {
+            effectiveMap.computeIfAbsent(profile, key -> read(role, profile, channel));
+        }
+    }
+
+    private static Map<String, Integer> read(String role, SocketProfile profile, Channel channel) {
+        ChannelConfig config = channel.config();
+        Map<String, Integer> effective = new LinkedHashMap<>();
+        effective.put("tcp_nodelay", Boolean.TRUE.equals(config.getOption(ChannelOption.TCP_NODELAY)) ? 1 : 0);
+        effective.put("so_sndbuf", Optional.ofNullable(config.getOption(ChannelOption.SO_SNDBUF)).orElse(0));
+        effective.put("so_rcvbuf", Optional.ofNullable(config.getOption(ChannelOption.SO_RCVBUF)).orElse(0));
+        effective.put("write_buffer_low", config.getWriteBufferLowWaterMark());
+        effective.put("write_buffer_high", config.getWriteBufferHighWaterMark());
+        logger.info("{}连接使用{}参数组,实际生效:{}", role, profile.getDesc(), effective);
+        return Collections.unmodifiableMap(effective);
+    }
+
+    public static Map<String, Map<SocketProfile, LongAdder>> getChannels() {
+        return Collections.unmodifiableMap(CHANNELS);
+    }
+
+    public static Map<String, Map<SocketProfile, Map<String, Integer>>> getEffective() {
+        return Collections.unmodifiableMap(EFFECTIVE);
+    }
+}
@@ -0,0 +1,97 @@
+package cn.holmes.rpt.base.utils;
+
+import cn.holmes.rpt.base.coder.MessageCodec;
+import cn.holmes.rpt.base.handler.IdleCheckHandler;
+import cn.holmes.rpt.base.handler.SpliceHandler;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.epoll.AbstractEpollStreamChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+
+import java.util.Objects;
+
+/**
+ * 独立代理连接上的TCP穿透由内核转发
+ * <p>
+ * 两端都开启splice并使用epoll、代理连接不加密且不压缩时,CONNECTED消息之后代理连接只传输原始字节,
+ * 外部/内网连接与代理连接之间通过splice转发,数据不经过用户态;连接断开时关闭代理连接,不再放回连接池
+ */
+public class SpliceUtils {
+
+    /**
+     * splice要求两端均为水平触发,该模式只能在连接注册前设置
+     */
+    public static void levelTriggered(Bootstrap bootstrap) {
+        if (TransportFactory.isEpoll(bootstrap.config().group())) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED);
+        }
+    }
+
+    public static void levelTriggered(ServerBootstrap bootstrap) {
+        if (TransportFactory.isEpoll(bootstrap.config().childGroup())) {
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED);
+        }
+    }
+
+    public static boolean isSupported(Channel channel) {
+        return channel instanceof AbstractEpollStreamChannel && ((AbstractEpollStreamChannel) channel).config().getEpollMode() == EpollMode.LEVEL_TRIGGERED;
+    }
+
+    /**
+     * 本端是否可以由内核转发,外部/内网连接与代理连接需在同一线程上
+     */
+    public static boolean isSupported(Channel channel, Channel proxyChannel) {
+        return isSupported(channel) && isSupported(proxyChannel) && proxyChannel.pipeline().get(SslHandler.class) == null;
+    }
+
+    public static boolean isSpliced(Channel proxyChannel) {
+        return Objects.nonNull(proxyChannel) && Objects.nonNull(proxyChannel.attr(Constants.SPLICE).get());
+    }
+
+    /**
+     * 代理连接停止读取并移除消息编解码器,之后只传输原始字节,在代理连接所在线程上调用
+     */
+    public static void detach(Channel proxyChannel) {
+        proxyChannel.config().setAutoRead(false);
+        SpliceHandler spliceHandler = new SpliceHandler();
+        proxyChannel.attr(Constants.SPLICE).set(spliceHandler);
+        ChannelPipeline pipeline = proxyChannel.pipeline();
+        pipeline.addAfter(pipeline.context(MessageCodec.class).name(), null, spliceHandler);
+        // 解码器中剩余的字节交给SpliceHandler暂存
+        pipeline.remove(MessageCodec.class);
+        if (pipeline.get(IdleCheckHandler.class) != null) {
+            pipeline.remove(IdleCheckHandler.class);
+        }
+    }
+
+    /**
+     * 先写出代理连接上暂存的字节,再开始双向转发,在两个连接共同所在的线程上调用
+     */
+    public static void splice(Channel channel, Channel proxyChannel) {
+        AbstractEpollStreamChannel source = (AbstractEpollStreamChannel) channel;
+        AbstractEpollStreamChannel target = (AbstractEpollStreamChannel) proxyChannel;
+        GenericFutureListener<Future<? super Void>> closeOnFailure = future -> {
+            if (!future.isSuccess()) {
+                channel.close();
+                proxyChannel.close();
+            }
+        };
+        proxyChannel.attr(Constants.SPLICE).get().flush(channel).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                closeOnFailure.operationComplete(future);
+                return;
+            }
+            source.spliceTo(target, Integer.MAX_VALUE).addListener(closeOnFailure);
+            target.spliceTo(source, Integer.MAX_VALUE).addListener(closeOnFailure);
+            channel.config().setAutoRead(true);
+            proxyChannel.config().setAutoRead(true);
+        });
+    }
+}
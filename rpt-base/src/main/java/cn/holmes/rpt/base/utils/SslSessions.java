@@ -0,0 +1,80 @@
+package cn.holmes.rpt.base.utils;
+
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.internal.tcnative.SSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TLS会话复用,控制连接与代理连接都是新建的TCP连接,复用会话可以跳过证书校验和密钥交换
+ */
+public class SslSessions {
+
+    private static final Logger logger = LoggerFactory.getLogger(SslSessions.class);
+
+    private static final LongAdder HANDSHAKES = new LongAdder();
+
+    private static final LongAdder RESUMPTIONS = new LongAdder();
+
+    private SslSessions() {
+    }
+
+    /**
+     * 开启会话票据(TLS1.3为PSK),票据密钥由BoringSSL生成并定期轮换
+     */
+    public static SslContext enableTickets(SslContext sslContext) {
+        if (sslContext.sessionContext() instanceof OpenSslSessionContext) {
+            ((OpenSslSessionContext) sslContext.sessionContext()).setTicketKeys();
+        }
+        return sslContext;
+    }
+
+    /**
+     * 握手成功后统计是否复用了会话
+     */
+    public static SslHandler record(SslHandler sslHandler) {
+        sslHandler.handshakeFuture().addListener(future -> {
+            if (!future.isSuccess()) {
+                return;
+            }
+            HANDSHAKES.increment();
+            if (isReused(sslHandler.engine())) {
+                RESUMPTIONS.increment();
+            }
+            logger.debug("TLS握手:{}次,复用会话:{}次", HANDSHAKES.sum(), RESUMPTIONS.sum());
+        });
+        return sslHandler;
+    }
+
+    private static boolean isReused(SSLEngine engine) {
+        if (!(engine instanceof ReferenceCountedOpenSslEngine)) {
+            return false;
+        }
+        synchronized (engine) {
+            long ssl = ((ReferenceCountedOpenSslEngine) engine).sslPointer();
+            return ssl != 0 && SSL.isSessionReused(ssl);
+        }
+    }
+
+    public static long getHandshakes() {
+        return HANDSHAKES.sum();
+    }
+
+    public static long getResumptions() {
+        return RESUMPTIONS.sum();
+    }
+
+    /**
+     * 复用会话的握手占全部握手的比例
+     */
+    public static double getResumptionRatio() {
+        long handshakes = HANDSHAKES.sum();
+        return handshakes == 0 ? 0 : (double) RESUMPTIONS.sum() / handshakes;
+    }
+}
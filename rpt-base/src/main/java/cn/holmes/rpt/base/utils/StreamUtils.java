@@ -0,0 +1,130 @@
+package cn.holmes.rpt.base.utils;
+
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
+import cn.holmes.rpt.base.protocol.StreamWindow;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多路复用模式下,控制连接承载多个逻辑流,通过流编号找到对应的外部/内网连接
+ * <p>
+ * 每个外部/内网连接各自维护流量窗口,背压通过TYPE_WINDOW_UPDATE跨越隧道传递
+ */
+public class StreamUtils {
+
+    public static boolean isMultiplex(Channel channel) {
+        return Objects.nonNull(channel.attr(Constants.STREAMS).get());
+    }
+
+    /**
+     * 流编号为0时使用代理连接上绑定的连接
+     */
+    public static Channel getLocalChannel(Channel channel, int streamId) {
+        if (streamId == 0) {
+            return channel.attr(Constants.LOCAL).get();
+        }
+        Map<Integer, Channel> streamMap = channel.attr(Constants.STREAMS).get();
+        return streamMap == null ? null : streamMap.get(streamId);
+    }
+
+    /**
+     * 流量窗口依赖对端归还,旧版本客户端不发送TYPE_WINDOW_UPDATE,协商V2后才启用
+     */
+    public static StreamWindow newWindow(Channel serverChannel) {
+        return serverChannel.attr(Constants.VERSION).get() == ProtocolVersion.V2 ? new StreamWindow() : null;
+    }
+
+    public static int getStreamId(Channel channel) {
+        Integer streamId = channel.attr(Constants.STREAM_ID).get();
+        return streamId == null ? 0 : streamId;
+    }
+
+    /**
+     * 分配流编号,跳过0
+     */
+    public static int nextStreamId(AtomicInteger sequence) {
+        int streamId;
+        do {
+            streamId = sequence.incrementAndGet() & Integer.MAX_VALUE;
+        } while (streamId == 0);
+        return streamId;
+    }
+
+    /**
+     * 控制连接可写性变化时更新所有已建立的流读取状态,避免单个流占满控制连接
+     */
+    public static void updateAutoRead(Channel channel) {
+        Map<Integer, Channel> streamMap = channel.attr(Constants.STREAMS).get();
+        if (streamMap == null) {
+            return;
+        }
+        for (Channel localChannel : streamMap.values()) {
+            if (Objects.nonNull(localChannel.attr(Constants.PROXY).get())) {
+                updateAutoRead(localChannel, channel);
+            }
+        }
+    }
+
+    /**
+     * 代理连接可写且发送窗口未耗尽时才读取,在连接所属线程上执行以保证判断和设置的先后顺序
+     * <p>
+     * 尚未完成绑定的连接不恢复读取
+     */
+    public static void updateAutoRead(Channel localChannel, Channel proxyChannel) {
+        if (Objects.isNull(localChannel.attr(Constants.PROXY).get())) {
+            return;
+        }
+        if (!localChannel.eventLoop().inEventLoop()) {
+            localChannel.eventLoop().execute(() -> updateAutoRead(localChannel, proxyChannel));
+            return;
+        }
+        StreamWindow window = localChannel.attr(Constants.WINDOW).get();
+        localChannel.config().setAutoRead(proxyChannel.isWritable() && (window == null || window.isWritable()));
+    }
+
+    /**
+     * 发送数据后扣减发送窗口,窗口耗尽时暂停读取
+     */
+    public static void consume(Channel localChannel, Channel proxyChannel, int size) {
+        StreamWindow window = localChannel.attr(Constants.WINDOW).get();
+        if (window != null && !window.consume(size)) {
+            updateAutoRead(localChannel, proxyChannel);
+        }
+    }
+
+    /**
+     * 数据写出后归还发送方窗口
+     */
+    public static void release(Channel localChannel, Channel proxyChannel, int streamId, int size) {
+        StreamWindow window = localChannel.attr(Constants.WINDOW).get();
+        if (window == null) {
+            return;
+        }
+        int credit = window.release(size);
+        if (credit > 0 && proxyChannel.isActive()) {
+            ByteBuf data = proxyChannel.alloc().buffer(4).writeInt(credit);
+            proxyChannel.writeAndFlush(new Message(MessageType.TYPE_WINDOW_UPDATE, null, data).setStreamId(streamId));
+        }
+    }
+
+    /**
+     * 收到对端归还的窗口后恢复读取
+     */
+    public static void increase(Channel proxyChannel, int streamId, int credit) {
+        Channel localChannel = getLocalChannel(proxyChannel, streamId);
+        if (localChannel == null) {
+            return;
+        }
+        StreamWindow window = localChannel.attr(Constants.WINDOW).get();
+        if (window != null) {
+            window.increase(credit);
+            updateAutoRead(localChannel, proxyChannel);
+        }
+    }
+}
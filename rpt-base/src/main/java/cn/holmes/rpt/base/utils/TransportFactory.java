@@ -0,0 +1,68 @@
+package cn.holmes.rpt.base.utils;
+
+import cn.holmes.rpt.base.config.TransportType;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按配置创建线程组,连接类型由所在的线程组决定,同一线程组上的连接使用同一种传输方式
+ */
+public class TransportFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransportFactory.class);
+
+    private TransportFactory() {
+    }
+
+    /**
+     * @param threads 线程数,为0则使用CPU核数的2倍
+     */
+    public static EventLoopGroup newEventLoopGroup(TransportType transportType, int threads) {
+        if (isEpoll(transportType)) {
+            return new EpollEventLoopGroup(threads);
+        }
+        return new NioEventLoopGroup(threads);
+    }
+
+    public static Class<? extends SocketChannel> socketChannel(EventLoopGroup group) {
+        return isEpoll(group) ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerSocketChannel> serverSocketChannel(EventLoopGroup group) {
+        return isEpoll(group) ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    private static boolean isEpoll(TransportType transportType) {
+        if (TransportType.NIO == transportType) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        if (TransportType.EPOLL == transportType) {
+            logger.warn("epoll不可用,使用NIO,原因:{}", Epoll.unavailabilityCause().getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 单个线程按其所属的线程组判断
+     */
+    public static boolean isEpoll(EventLoopGroup group) {
+        if (group instanceof EventLoop) {
+            group = ((EventLoop) group).parent();
+        }
+        return group instanceof EpollEventLoopGroup;
+    }
+}
@@ -0,0 +1,242 @@
+package cn.holmes.rpt.base.coder;
+
+import cn.holmes.rpt.base.config.ProxyType;
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameFormatTest {
+
+    /**
+     * 旧版本MessageEncoder与LengthFieldPrepender(4)输出的消息帧
+     */
+    private static final String BASELINE_REGISTER = "000000550000000100000001000000490000002000000021636e2e686f6c6d65732e7270742e626173652e70726f746f636f6c2e4d6574610a08746573742d6b657910002b08a52210bd1a1a093132372e302e302e3128002c";
+
+    private static final String BASELINE_KEEPALIVE = "0000000c000000050000000100000000";
+
+    /**
+     * 旧版本的数据消息携带元数据
+     */
+    private static final String BASELINE_DATA = "0000003f00000006000000010000002e0000002000000006636e2e686f6c6d65732e7270742e626173652e70726f746f636f6c2e4d65746110001a02633168656c6c6f";
+
+    /**
+     * 旧版本在gzip流中依次发出的REGISTER、KEEPALIVE、DATA
+     */
+    private static final String BASELINE_GZIP = "1f8b08000000000000006260600805000000ffff6260606084624f20560062c5e43cbd8cfc9cdcd462bda28212bda4c4e254bd82a2fc92fce4fc1c3ddfd492442e8e92d4e212ddecd44a01066d8ea54a027ba5a4380d8dccf50c80d050834107000000ffff021ac203000000ffff026256a8c10c00000000ffff02027b00000000ffff026236285f0f6a111b218b0418a498920d33527372f201000000ffff";
+
+    @Test
+    public void decodeBaselineFrames() throws Exception {
+        Message register = decode(FrameFormat.V1, BASELINE_REGISTER);
+        assertEquals(MessageType.TYPE_REGISTER, register.getType());
+        assertEquals("test-key", register.getMeta().getClientKey());
+        assertEquals(4389, register.getMeta().getRemoteConfigList().get(0).getRemotePort());
+        assertEquals(ProxyType.TCP, register.getMeta().getRemoteConfigList().get(0).getProxyType());
+        assertEquals(0, register.getMeta().getVersion());
+        register.release();
+
+        Message keepalive = decode(FrameFormat.V1, BASELINE_KEEPALIVE);
+        assertEquals(MessageType.TYPE_KEEPALIVE, keepalive.getType());
+        assertNull(keepalive.getMeta());
+        assertNull(keepalive.getData());
+
+        Message data = decode(FrameFormat.V1, BASELINE_DATA);
+        assertEquals(MessageType.TYPE_DATA, data.getType());
+        assertEquals("hello", data.getData().toString(StandardCharsets.UTF_8));
+        data.release();
+    }
+
+    @Test
+    public void encodeV1SameAsBaseline() throws Exception {
+        assertEquals(BASELINE_KEEPALIVE, encode(FrameFormat.V1, new Message(MessageType.TYPE_KEEPALIVE, null, null)));
+        ByteBuf hello = Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8);
+        assertEquals("0000001100000006000000010000000068656c6c6f", encode(FrameFormat.V1, new Message(MessageType.TYPE_DATA, null, hello)));
+        hello.release();
+    }
+
+    @Test
+    public void roundTripV1() throws Exception {
+        roundTrip(FrameFormat.V1, 0);
+    }
+
+    @Test
+    public void roundTripV2() throws Exception {
+        roundTrip(FrameFormat.V2, 300);
+    }
+
+    @Test(expected = EncoderException.class)
+    public void rejectStreamIdInV1() throws Exception {
+        encode(FrameFormat.V1, new Message(MessageType.TYPE_KEEPALIVE, null, null).setStreamId(1));
+    }
+
+    @Test(expected = TooLongFrameException.class)
+    public void rejectTooLongFrameV1() throws Exception {
+        FrameFormat.V1.decode(ByteBufAllocator.DEFAULT, Unpooled.buffer().writeInt(FrameFormat.MAX_FRAME_LENGTH + 1).writeInt(MessageType.TYPE_DATA.getCode()));
+    }
+
+    /**
+     * 只收到声明的帧长度时即断开,不等待缓存帧内容
+     */
+    @Test(expected = TooLongFrameException.class)
+    public void rejectTooLongFrameV2() throws Exception {
+        FrameFormat.V2.decode(ByteBufAllocator.DEFAULT, Unpooled.wrappedBuffer(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07}));
+    }
+
+    @Test
+    public void decodeBaselineGzipStream() {
+        EmbeddedChannel channel = new EmbeddedChannel(new GzipCodec(), new MessageCodec());
+        channel.writeInbound(Unpooled.wrappedBuffer(ByteBufUtil.decodeHexDump(BASELINE_GZIP)));
+        List<Message> messages = readInbound(channel);
+        assertEquals(3, messages.size());
+        assertEquals("test-key", messages.get(0).getMeta().getClientKey());
+        assertEquals(MessageType.TYPE_KEEPALIVE, messages.get(1).getType());
+        assertEquals("hello", messages.get(2).getData().toString(StandardCharsets.UTF_8));
+        messages.forEach(Message::release);
+        assertTrue(channel.pipeline().get(GzipCodec.class).isDecoding());
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * 服务端应答AUTH后切换,客户端收到AUTH前发出的V1消息仍按V1解码
+     */
+    @Test
+    public void switchAfterNegotiation() {
+        EmbeddedChannel client = newChannel();
+        EmbeddedChannel server = newChannel();
+
+        client.writeOutbound(new Message(MessageType.TYPE_REGISTER, new Meta().setClientKey("test-key").setVersion(ProtocolVersion.CURRENT.getCode()), null));
+        transfer(client, server);
+        Message register = readInbound(server).get(0);
+        assertEquals(ProtocolVersion.V2.getCode(), register.getMeta().getVersion());
+
+        server.writeOutbound(new Message(MessageType.TYPE_AUTH, register.getMeta().setConnection(true), null));
+        assertEquals(ProtocolVersion.V2, server.attr(Constants.VERSION).get());
+        assertTrue(server.pipeline().get(GzipCodec.class).isEncoding());
+        server.writeOutbound(new Message(MessageType.TYPE_KEEPALIVE, null, null).setStreamId(7));
+        assertFalse(server.pipeline().get(GzipCodec.class).isEncoding());
+        // 客户端收到AUTH前发出的消息
+        client.writeOutbound(new Message(MessageType.TYPE_KEEPALIVE, null, null));
+
+        transfer(server, client);
+        List<Message> messages = readInbound(client);
+        assertEquals(2, messages.size());
+        assertEquals(MessageType.TYPE_AUTH, messages.get(0).getType());
+        assertEquals(7, messages.get(1).getStreamId());
+        assertFalse(client.pipeline().get(GzipCodec.class).isDecoding());
+        assertEquals(ProtocolVersion.V2, client.attr(Constants.VERSION).get());
+
+        ByteBuf data = Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8);
+        client.writeOutbound(new Message(MessageType.TYPE_DATA, null, data).setStreamId(9));
+        transfer(client, server);
+        messages = readInbound(server);
+        assertEquals(2, messages.size());
+        assertEquals(MessageType.TYPE_KEEPALIVE, messages.get(0).getType());
+        assertEquals(9, messages.get(1).getStreamId());
+        assertEquals("hello", messages.get(1).getData().toString(StandardCharsets.UTF_8));
+        messages.forEach(Message::release);
+        assertFalse(server.pipeline().get(GzipCodec.class).isDecoding());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    /**
+     * 旧版本对端不携带版本号,始终使用V1和gzip
+     */
+    @Test
+    public void keepV1WithoutVersion() {
+        EmbeddedChannel server = newChannel();
+        server.writeOutbound(new Message(MessageType.TYPE_AUTH, new Meta().setClientKey("test-key").setConnection(true), null));
+        server.writeOutbound(new Message(MessageType.TYPE_KEEPALIVE, null, null));
+        assertNull(server.attr(Constants.VERSION).get());
+        assertTrue(server.pipeline().get(GzipCodec.class).isEncoding());
+        server.finishAndReleaseAll();
+    }
+
+    private static void roundTrip(FrameFormat format, int streamId) throws Exception {
+        RemoteConfig remoteConfig = new RemoteConfig();
+        remoteConfig.setProxyType(ProxyType.HTTP);
+        remoteConfig.setDomain("test.domain.com");
+        remoteConfig.setPath("/api");
+        Meta meta = new Meta("channel", remoteConfig).setVersion(ProtocolVersion.V2.getCode()).setMultiplex(true).setToken("token");
+        ByteBuf data = Unpooled.copiedBuffer("payload", StandardCharsets.UTF_8);
+        Message message = new Message(MessageType.TYPE_CONNECTED, meta, data).setStreamId(streamId);
+        Message decoded = decode(format, encode(format, message));
+        data.release();
+
+        assertEquals(MessageType.TYPE_CONNECTED, decoded.getType());
+        assertEquals(streamId, decoded.getStreamId());
+        assertEquals("channel", decoded.getMeta().getChannelId());
+        assertEquals("/api", decoded.getMeta().getRemoteConfig().getPath());
+        assertEquals(ProtocolVersion.V2.getCode(), decoded.getMeta().getVersion());
+        assertTrue(decoded.getMeta().isMultiplex());
+        assertEquals("token", decoded.getMeta().getToken());
+        assertEquals("payload", decoded.getData().toString(StandardCharsets.UTF_8));
+        decoded.release();
+
+        Message keepalive = decode(format, encode(format, new Message(MessageType.TYPE_KEEPALIVE, null, null)));
+        assertEquals(MessageType.TYPE_KEEPALIVE, keepalive.getType());
+        assertNull(keepalive.getMeta());
+        assertNull(keepalive.getData());
+    }
+
+    private static String encode(FrameFormat format, Message message) throws Exception {
+        List<Object> out = new ArrayList<>();
+        format.encode(ByteBufAllocator.DEFAULT, message, out);
+        ByteBuf frame = (ByteBuf) out.get(0);
+        try {
+            return ByteBufUtil.hexDump(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static Message decode(FrameFormat format, String hex) throws Exception {
+        ByteBuf in = Unpooled.wrappedBuffer(ByteBufUtil.decodeHexDump(hex));
+        try {
+            Message message = format.decode(ByteBufAllocator.DEFAULT, in);
+            assertNotNull(message);
+            assertFalse(in.isReadable());
+            return message;
+        } finally {
+            in.release();
+        }
+    }
+
+    private static EmbeddedChannel newChannel() {
+        return new EmbeddedChannel(new GzipCodec(), new ChunkedWriteHandler(), new MessageCodec());
+    }
+
+    private static void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        ByteBuf buf;
+        while ((buf = from.readOutbound()) != null) {
+            to.writeInbound(buf);
+        }
+    }
+
+    private static List<Message> readInbound(EmbeddedChannel channel) {
+        List<Message> messages = new ArrayList<>();
+        Message message;
+        while ((message = channel.readInbound()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -2,24 +2,27 @@ package cn.holmes.rpt.client;
 
 import cn.holmes.rpt.base.coder.GzipCodec;
 import cn.holmes.rpt.base.coder.MessageCodec;
+import cn.holmes.rpt.base.compress.api.CompressionFactory;
 import cn.holmes.rpt.base.config.ClientConfig;
 import cn.holmes.rpt.base.handler.IdleCheckHandler;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
 import cn.holmes.rpt.base.utils.Application;
 import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.SslSessions;
+import cn.holmes.rpt.base.utils.TransportFactory;
 import cn.holmes.rpt.client.handler.ClientHandler;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
@@ -29,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 public class ClientApplication extends Application<Bootstrap> {
@@ -36,7 +40,11 @@ public class ClientApplication extends Application<Bootstrap> {
     private static final Logger logger = LoggerFactory.getLogger(ClientApplication.class);
 
     private final Bootstrap bootstrap = new Bootstrap();
-    private final NioEventLoopGroup clientWorkerGroup = new NioEventLoopGroup();
+    private EventLoopGroup clientWorkerGroup;
+    /**
+     * 不加密的代理连接使用的启动器,未开启时为空
+     */
+    private Bootstrap plaintextBootstrap;
 
     public static void main(String[] args) throws Exception {
         Application.run(args, new ClientApplication());
@@ -51,23 +59,43 @@ public class ClientApplication extends Application<Bootstrap> {
     @Override
     public Application<Bootstrap> buildBootstrap() throws IOException {
         SslContext sslContext = buildSslContext();
-        bootstrap.group(clientWorkerGroup).channel(NioSocketChannel.class).option(ChannelOption.SO_KEEPALIVE, true).handler(new ChannelInitializer<SocketChannel>() {
+        clientWorkerGroup = TransportFactory.newEventLoopGroup(Config.getClientConfig().getTransport(), 0);
+        bootstrap.group(clientWorkerGroup).channel(TransportFactory.socketChannel(clientWorkerGroup)).handler(initializer(sslContext));
+        SocketProfiles.apply(bootstrap, SocketProfiles.of(Config.getClientConfig().getSocketProfile()));
+        if (Config.getClientConfig().isSplice()) {
+            SpliceUtils.levelTriggered(bootstrap);
+        }
+        if (Config.getClientConfig().isPlaintextProxy()) {
+            // 控制连接仍使用TLS,代理连接只在服务端同时开启时不加密
+            plaintextBootstrap = bootstrap.clone().handler(initializer(null));
+        }
+        return this;
+    }
+
+    /**
+     * @param sslContext 为空时不加密
+     */
+    private ChannelInitializer<SocketChannel> initializer(SslContext sslContext) {
+        return new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
-                ch.pipeline().addLast(new GzipCodec());
-                //固定帧长解码器
-                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
-                ch.pipeline().addLast(new LengthFieldPrepender(4));
+                if (sslContext != null) {
+                    // 指定服务端地址,按地址缓存会话,后续连接复用会话
+                    ch.pipeline().addLast(SslSessions.record(sslContext.newHandler(ch.alloc(), Config.getClientConfig().getServerIp(), Config.getClientConfig().getServerPort())));
+                    ch.pipeline().addLast(new GzipCodec());
+                }
+                // 合并刷新,多个消息合并为一个TLS记录写出
+                if (Config.getClientConfig().getFlushConsolidation() > 0) {
+                    ch.pipeline().addLast(new FlushConsolidationHandler(Config.getClientConfig().getFlushConsolidation(), true));
+                }
                 ch.pipeline().addLast(new ChunkedWriteHandler());
-                //自定义协议编解码器
+                //自定义协议编解码器,包含拆帧
                 ch.pipeline().addLast(new MessageCodec());
                 ch.pipeline().addLast(new IdleCheckHandler(60, 30, 0));
                 //服务器连接处理器
                 ch.pipeline().addLast(new ClientHandler());
             }
-        });
-        return this;
+        };
     }
 
     @Override
@@ -81,10 +109,12 @@ public class ClientApplication extends Application<Bootstrap> {
         bootstrap.connect(clientConfig.getServerIp(), clientConfig.getServerPort()).addListener((ChannelFutureListener) future -> {
             if (future.isSuccess()) {
                 future.channel().attr(Constants.Client.APPLICATION).set(this);
+                future.channel().attr(Constants.Client.PROXY_BOOTSTRAP).set(plaintextBootstrap);
+                SocketProfiles.record("control", SocketProfiles.of(clientConfig.getSocketProfile()), future.channel());
                 //连接建立成功，发送注册请求
                 Message message = new Message();
                 message.setType(MessageType.TYPE_REGISTER);
-                message.setMeta(new Meta(Config.getClientConfig().getClientKey(), Config.getClientConfig().getConfig()));
+                message.setMeta(new Meta(Config.getClientConfig().getClientKey(), Config.getClientConfig().getConfig()).setMultiplex(Config.getClientConfig().isMultiplex()).setProbe(true).setCompressionList(CompressionFactory.getCompressionTypes()).setVersion(ProtocolVersion.CURRENT.getCode()));
                 future.channel().writeAndFlush(message);
             } else {
                 logger.info("客户端失败连接服务端IP:{},服务端端口:{},原因:{}", clientConfig.getServerIp(), clientConfig.getServerPort(), future.cause().getMessage());
@@ -96,7 +126,7 @@ public class ClientApplication extends Application<Bootstrap> {
 
     @Override
     public void stop() {
-        clientWorkerGroup.shutdownGracefully();
+        Optional.ofNullable(clientWorkerGroup).ifPresent(EventLoopGroup::shutdownGracefully);
     }
 
     @Override
@@ -106,7 +136,10 @@ public class ClientApplication extends Application<Bootstrap> {
 
     private SslContext buildSslContext() throws IOException {
         try (InputStream certChainFile = ClassLoader.getSystemResourceAsStream("client.crt"); InputStream keyFile = ClassLoader.getSystemResourceAsStream("pkcs8_client.key"); InputStream rootFile = ClassLoader.getSystemResourceAsStream("ca.crt")) {
-            return SslContextBuilder.forClient().keyManager(certChainFile, keyFile).trustManager(rootFile).sslProvider(SslProvider.OPENSSL).build();
+            ClientConfig clientConfig = Config.getClientConfig();
+            SslContext sslContext = SslContextBuilder.forClient().keyManager(certChainFile, keyFile).trustManager(rootFile).sslProvider(SslProvider.OPENSSL)
+                    .sessionCacheSize(clientConfig.getSslSessionCacheSize()).sessionTimeout(clientConfig.getSslSessionTimeout()).build();
+            return SslSessions.enableTickets(sslContext);
         }
     }
 }
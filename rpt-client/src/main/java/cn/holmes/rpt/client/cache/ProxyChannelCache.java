@@ -8,28 +8,91 @@ import cn.holmes.rpt.base.utils.Listener;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 代理连接池,按代理连接所在的线程分区,内网连接随代理连接注册到同一线程
+ * <p>
+ * 控制连接认证成功后预先建立代理连接并完成TLS握手,闲置连接数随连接的到达速率增长,
+ * 不低于配置的最少闲置连接数;闲置连接从队头取用、从队尾淘汰,超过闲置时间的连接优先关闭
+ * <p>
+ * 服务端在连接闲置40秒后发送心跳,闲置连接超过{@link #ALIVE_TIME}未收到心跳时视为已失效(如NAT映射已过期),
+ * 取用前和维护时都会关闭,不必等到读空闲检测断开
+ */
 public class ProxyChannelCache {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyChannelCache.class);
 
-    private static final Integer MAX_QUEUE_LIMIT = 128;
+    private static final Map<EventLoop, Deque<Channel>> PROXY_CHANNEL_QUEUE_MAP = new ConcurrentHashMap<>();
 
-    private static final Queue<Channel> PROXY_CHANNEL_QUEUE = new LinkedBlockingQueue<>();
+    /**
+     * 预热中尚未完成握手的连接数
+     */
+    private static final AtomicInteger WARMING = new AtomicInteger();
+
+    /**
+     * 上次维护以来的取用次数,用于估算连接的到达速率
+     */
+    private static final LongAdder ARRIVALS = new LongAdder();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    private static final LongAdder MISSES = new LongAdder();
+
+    private static final LongAdder HANDSHAKES = new LongAdder();
+
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    /**
+     * 闲置连接未收到服务端数据的最长时间(毫秒),略大于服务端的心跳间隔
+     */
+    private static final long ALIVE_TIME = TimeUnit.SECONDS.toMillis(45);
+
+    /**
+     * 打印连接池统计的间隔(毫秒)
+     */
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 每秒到达的连接数的指数加权平均值,只在维护任务中更新
+     */
+    private static volatile double rate;
+
+    private static volatile long reportTime = System.currentTimeMillis();
+
+    /**
+     * 上次打印统计时的取用次数,期间没有取用时不再打印
+     */
+    private static volatile long reportedArrivals;
 
     public static void get(Channel serverChannel, Meta meta, Listener<Meta> listener) {
-        Channel proxyChannel = PROXY_CHANNEL_QUEUE.poll();
-        if (proxyChannel != null && proxyChannel.isActive()) {
+        ARRIVALS.increment();
+        Bootstrap bootstrap = bootstrap(serverChannel);
+        // 轮询选择线程,使穿透连接在各线程间均匀分布
+        Channel proxyChannel = poll(bootstrap.config().group().next());
+        if (proxyChannel != null) {
+            HITS.increment();
             listener.success(serverChannel, proxyChannel, meta);
             return;
         }
+        MISSES.increment();
+        HANDSHAKES.increment();
         ClientConfig clientConfig = Config.getClientConfig();
-        Bootstrap bootstrap = serverChannel.attr(Constants.Client.APPLICATION).get().bootstrap();
         bootstrap.connect(clientConfig.getServerIp(), clientConfig.getServerPort()).addListener((ChannelFutureListener) future -> {
             if (future.isSuccess()) {
                 listener.success(serverChannel, future.channel(), meta);
@@ -40,21 +103,171 @@ public class ProxyChannelCache {
 
     }
 
+    /**
+     * 控制连接认证成功后每秒维护一次,控制连接断开时停止
+     */
+    public static void maintain(Channel serverChannel) {
+        Bootstrap bootstrap = bootstrap(serverChannel);
+        ScheduledFuture<?> future = serverChannel.eventLoop().scheduleAtFixedRate(() -> maintain(bootstrap), 0, 1, TimeUnit.SECONDS);
+        serverChannel.closeFuture().addListener(closeFuture -> future.cancel(false));
+    }
+
+    /**
+     * 服务端接受不加密的代理连接时使用不加密的启动器,否则与控制连接共用
+     */
+    private static Bootstrap bootstrap(Channel serverChannel) {
+        return Optional.ofNullable(serverChannel.attr(Constants.Client.PROXY_BOOTSTRAP).get()).orElseGet(() -> serverChannel.attr(Constants.Client.APPLICATION).get().bootstrap());
+    }
+
+    private static void maintain(Bootstrap bootstrap) {
+        ClientConfig clientConfig = Config.getClientConfig();
+        rate = rate / 2 + ARRIVALS.sumThenReset() / 2.0;
+        evict(clientConfig.getProxyPoolMin(), TimeUnit.SECONDS.toMillis(clientConfig.getProxyPoolIdleTime()));
+        // 保持约一秒的用量,突发流量到达时无需等待握手
+        int target = Math.min(clientConfig.getProxyPoolMax(), Math.max(clientConfig.getProxyPoolMin(), (int) Math.ceil(rate)));
+        for (int deficit = target - size() - WARMING.get(); deficit > 0; deficit--) {
+            warm(bootstrap);
+        }
+        logger.debug("连接池闲置连接数:{}个,预热中:{}个,命中:{}次,未命中:{}次,握手:{}次,淘汰:{}次", size(), WARMING.get(), HITS.sum(), MISSES.sum(), HANDSHAKES.sum(), EVICTIONS.sum());
+        report();
+    }
+
+    /**
+     * 每分钟打印一次连接池的累计统计
+     */
+    private static void report() {
+        long now = System.currentTimeMillis();
+        if (now - reportTime < REPORT_INTERVAL) {
+            return;
+        }
+        reportTime = now;
+        long hits = HITS.sum();
+        long misses = MISSES.sum();
+        if (hits + misses == reportedArrivals) {
+            return;
+        }
+        reportedArrivals = hits + misses;
+        logger.info("代理连接池累计命中:{}次,未命中:{}次,命中率:{}%,握手:{}次,淘汰:{}次,当前闲置连接数:{}个", hits, misses, hits * 100 / (hits + misses), HANDSHAKES.sum(), EVICTIONS.sum(), size());
+    }
+
+    /**
+     * 建立连接并完成TLS握手后放入连接池,不加密的连接建立后直接放入
+     */
+    private static void warm(Bootstrap bootstrap) {
+        WARMING.incrementAndGet();
+        HANDSHAKES.increment();
+        ClientConfig clientConfig = Config.getClientConfig();
+        bootstrap.connect(clientConfig.getServerIp(), clientConfig.getServerPort()).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                WARMING.decrementAndGet();
+                return;
+            }
+            Channel proxyChannel = future.channel();
+            SslHandler sslHandler = proxyChannel.pipeline().get(SslHandler.class);
+            (Objects.isNull(sslHandler) ? proxyChannel.newSucceededFuture() : sslHandler.handshakeFuture()).addListener(handshakeFuture -> {
+                WARMING.decrementAndGet();
+                if (handshakeFuture.isSuccess()) {
+                    put(proxyChannel);
+                } else {
+                    proxyChannel.close();
+                }
+            });
+        });
+    }
+
+    /**
+     * 移除已断开或已失效的连接,超过最少闲置连接数的部分按闲置时间从队尾淘汰
+     */
+    private static void evict(int min, long idleTime) {
+        long now = System.currentTimeMillis();
+        int size = size();
+        for (Deque<Channel> queue : PROXY_CHANNEL_QUEUE_MAP.values()) {
+            Iterator<Channel> iterator = queue.descendingIterator();
+            while (iterator.hasNext()) {
+                Channel proxyChannel = iterator.next();
+                boolean expired = size > min && now - Optional.ofNullable(proxyChannel.attr(Constants.Client.IDLE_TIME).get()).orElse(now) > idleTime;
+                if (isAlive(proxyChannel, now) && !expired) {
+                    continue;
+                }
+                if (queue.removeLastOccurrence(proxyChannel)) {
+                    size--;
+                    EVICTIONS.increment();
+                    proxyChannel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 优先取指定线程上的闲置连接,没有时再从其他线程上获取
+     */
+    private static Channel poll(EventLoop eventLoop) {
+        Channel proxyChannel = poll(PROXY_CHANNEL_QUEUE_MAP.get(eventLoop));
+        if (proxyChannel != null) {
+            return proxyChannel;
+        }
+        for (Deque<Channel> queue : PROXY_CHANNEL_QUEUE_MAP.values()) {
+            proxyChannel = poll(queue);
+            if (proxyChannel != null) {
+                return proxyChannel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取最近放回的连接,闲置较久的连接留在队尾等待淘汰
+     */
+    private static Channel poll(Deque<Channel> queue) {
+        if (queue == null) {
+            return null;
+        }
+        Channel proxyChannel;
+        while ((proxyChannel = queue.pollFirst()) != null) {
+            if (isAlive(proxyChannel, System.currentTimeMillis())) {
+                return proxyChannel;
+            }
+            EVICTIONS.increment();
+            proxyChannel.close();
+        }
+        return null;
+    }
+
+    /**
+     * 放回连接池或最近一次收到服务端心跳后未超过{@link #ALIVE_TIME}
+     */
+    private static boolean isAlive(Channel proxyChannel, long now) {
+        if (!proxyChannel.isActive()) {
+            return false;
+        }
+        long idleTime = Optional.ofNullable(proxyChannel.attr(Constants.Client.IDLE_TIME).get()).orElse(now);
+        long aliveTime = Optional.ofNullable(proxyChannel.attr(Constants.Client.ALIVE_TIME).get()).orElse(idleTime);
+        return now - Math.max(idleTime, aliveTime) <= ALIVE_TIME;
+    }
+
     public static void put(Channel proxyChannel) {
-        if (PROXY_CHANNEL_QUEUE.size() > MAX_QUEUE_LIMIT) {
+        if (size() >= Config.getClientConfig().getProxyPoolMax()) {
             proxyChannel.close();
             return;
         }
         if (proxyChannel.isActive()) {
             proxyChannel.config().setAutoRead(true);
             proxyChannel.attr(Constants.LOCAL).set(null);
-            PROXY_CHANNEL_QUEUE.offer(proxyChannel);
+            proxyChannel.attr(Constants.Client.IDLE_TIME).set(System.currentTimeMillis());
+            PROXY_CHANNEL_QUEUE_MAP.computeIfAbsent(proxyChannel.eventLoop(), eventLoop -> new LinkedBlockingDeque<>()).offerFirst(proxyChannel);
         }
-        logger.debug("连接池闲置连接数:{}个", PROXY_CHANNEL_QUEUE.size());
+        logger.debug("连接池闲置连接数:{}个", size());
     }
 
     public static void delete(Channel proxyChannel) {
-        PROXY_CHANNEL_QUEUE.remove(proxyChannel);
+        Optional.ofNullable(PROXY_CHANNEL_QUEUE_MAP.get(proxyChannel.eventLoop())).ifPresent(queue -> queue.remove(proxyChannel));
     }
 
+    public static int size() {
+        int size = 0;
+        for (Deque<Channel> queue : PROXY_CHANNEL_QUEUE_MAP.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
 }
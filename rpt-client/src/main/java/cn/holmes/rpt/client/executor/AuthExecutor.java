@@ -4,11 +4,13 @@ import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.client.cache.ProxyChannelCache;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -30,6 +32,17 @@ public class AuthExecutor implements MessageExecutor {
         if (connection) {
             logger.info("连接成功,当前秘钥:{}", message.getMeta().getClientKey());
             context.channel().attr(Constants.CHANNELS).set(channelMap);
+            context.channel().attr(Constants.COMPRESSIONS).set(message.getMeta().getCompressionList());
+            if (message.getMeta().isMultiplex()) {
+                logger.info("服务端已开启多路复用");
+                context.channel().attr(Constants.STREAMS).set(new ConcurrentHashMap<>(1024));
+            } else {
+                if (Objects.nonNull(context.channel().attr(Constants.Client.PROXY_BOOTSTRAP).get()) && !message.getMeta().isPlaintext()) {
+                    logger.info("服务端未开启不加密的代理连接,代理连接继续使用TLS");
+                    context.channel().attr(Constants.Client.PROXY_BOOTSTRAP).set(null);
+                }
+                ProxyChannelCache.maintain(context.channel());
+            }
         } else {
             logger.info("连接失败,当前秘钥:{}", message.getMeta().getClientKey());
         }
@@ -1,8 +1,9 @@
 package cn.holmes.rpt.client.executor;
 
-import cn.holmes.rpt.base.coder.ByteArrayCodec;
+import cn.holmes.rpt.base.compress.StreamCompressor;
 import cn.holmes.rpt.base.config.ProxyType;
 import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.SocketProfile;
 import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
@@ -10,27 +11,25 @@ import cn.holmes.rpt.base.protocol.Meta;
 import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
 import cn.holmes.rpt.base.utils.Listener;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import cn.holmes.rpt.base.utils.TransportFactory;
 import cn.holmes.rpt.client.cache.ProxyChannelCache;
 import cn.holmes.rpt.client.handler.LocalHandler;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.util.internal.EmptyArrays;
 
 import java.util.Collections;
 import java.util.Objects;
+import java.util.Optional;
 
 public class ConnectedExecutor implements MessageExecutor, Listener<Meta> {
 
-    private final EventLoopGroup localGroup = new NioEventLoopGroup();
-
-    public ConnectedExecutor() {
-        Runtime.getRuntime().addShutdownHook(new Thread(localGroup::shutdownGracefully));
-    }
-
     @Override
     public MessageType getMessageType() {
         return MessageType.TYPE_CONNECTED;
@@ -45,44 +44,79 @@ public class ConnectedExecutor implements MessageExecutor, Listener<Meta> {
         }
         ProxyType proxyType = remoteConfig.getProxyType();
         if (Objects.equals(ProxyType.HTTP, proxyType)) {
-            String domain = remoteConfig.getDomain();
-            // 补全配置信息
-            RemoteConfig httpConfig = Config.getClientConfig().getHttpConfig(domain);
+            // 补全配置信息,同一域名按路径区分
+            RemoteConfig httpConfig = Config.getClientConfig().getHttpConfig(remoteConfig.getDomain(), remoteConfig.getPath());
             if (Objects.isNull(httpConfig)) {
                 return;
             }
             meta.setRemoteConfigList(Collections.singletonList(httpConfig));
         }
+        // 新建的代理连接在回复CONNECTED后切换到控制连接已协商的协议版本
+        Optional.ofNullable(context.channel().attr(Constants.VERSION).get()).ifPresent(version -> meta.setVersion(version.getCode()));
+        if (message.getStreamId() != 0) {
+            // 多路复用: 直接使用控制连接
+            connect(context.channel(), context.channel(), meta, message.getStreamId());
+            return;
+        }
         // 绑定代理连接
         ProxyChannelCache.get(context.channel(), meta, this);
     }
 
     @Override
     public void success(Channel serverChannel, Channel proxyChannel, Meta meta) {
+        connect(serverChannel, proxyChannel, meta, 0);
+    }
+
+    private void connect(Channel serverChannel, Channel proxyChannel, Meta meta, int streamId) {
         RemoteConfig remoteConfig = meta.getRemoteConfig();
+        SocketProfile socketProfile = SocketProfiles.of(remoteConfig, Config.getClientConfig().getSocketProfile());
+        if (streamId == 0) {
+            // 连接池中的代理连接按本次穿透的配置设置
+            SocketProfiles.apply(proxyChannel, socketProfile);
+            SocketProfiles.record("proxy", socketProfile, proxyChannel);
+        }
         Bootstrap localBootstrap = new Bootstrap();
-        localBootstrap.group(localGroup).channel(NioSocketChannel.class).option(ChannelOption.SO_KEEPALIVE, true).handler(new ChannelInitializer<SocketChannel>() {
+        // 内网连接与代理连接注册在同一个线程上,转发数据不再跨线程
+        localBootstrap.group(proxyChannel.eventLoop()).channel(TransportFactory.socketChannel(proxyChannel.eventLoop())).handler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel channel) throws Exception {
-                channel.pipeline().addLast(new ByteArrayCodec());
+                // 连接激活前完成绑定,连接监听器可能晚于channelActive执行
+                channel.attr(Constants.PROXY).set(proxyChannel);
+                channel.attr(Constants.WINDOW).set(StreamUtils.newWindow(serverChannel));
+                channel.attr(Constants.COMPRESSOR).set(StreamCompressor.create(remoteConfig.getCompression(), serverChannel.attr(Constants.COMPRESSIONS).get()));
+                if (streamId == 0) {
+                    proxyChannel.attr(Constants.LOCAL).set(channel);
+                } else {
+                    channel.attr(Constants.STREAM_ID).set(streamId);
+                    Optional.ofNullable(serverChannel.attr(Constants.STREAMS).get()).ifPresent(streamMap -> streamMap.put(streamId, channel));
+                }
+                if (Config.getClientConfig().getFlushConsolidation() > 0) {
+                    channel.pipeline().addLast(new FlushConsolidationHandler(Config.getClientConfig().getFlushConsolidation(), true));
+                }
                 channel.pipeline().addLast(new ChunkedWriteHandler());
-                channel.pipeline().addLast(new LocalHandler(serverChannel, meta));
+                channel.pipeline().addLast(new LocalHandler(serverChannel, meta, streamId));
+                SocketProfiles.record("local", socketProfile, channel);
             }
         });
+        SocketProfiles.apply(localBootstrap, socketProfile);
+        if (Config.getClientConfig().isSplice()) {
+            SpliceUtils.levelTriggered(localBootstrap);
+        }
         localBootstrap.connect(remoteConfig.getLocalIp(), remoteConfig.getLocalPort()).addListener((ChannelFutureListener) future -> {
-            if (future.isSuccess()) {
-                future.channel().attr(Constants.PROXY).set(proxyChannel);
-                proxyChannel.attr(Constants.LOCAL).set(future.channel());
-            } else {
-                ProxyChannelCache.put(proxyChannel);
-                serverChannel.writeAndFlush(new Message(MessageType.TYPE_DISCONNECTED, meta, EmptyArrays.EMPTY_BYTES));
+            if (!future.isSuccess()) {
+                if (streamId == 0) {
+                    ProxyChannelCache.put(proxyChannel);
+                } else {
+                    Optional.ofNullable(serverChannel.attr(Constants.STREAMS).get()).ifPresent(streamMap -> streamMap.remove(streamId));
+                }
+                serverChannel.writeAndFlush(new Message(MessageType.TYPE_DISCONNECTED, meta, Unpooled.EMPTY_BUFFER).setStreamId(streamId));
             }
         });
     }
 
     @Override
     public void fail(Channel serverChannel, Meta meta) {
-        serverChannel.writeAndFlush(new Message(MessageType.TYPE_DISCONNECTED, meta, EmptyArrays.EMPTY_BYTES));
+        serverChannel.writeAndFlush(new Message(MessageType.TYPE_DISCONNECTED, meta, Unpooled.EMPTY_BUFFER));
     }
 
 }
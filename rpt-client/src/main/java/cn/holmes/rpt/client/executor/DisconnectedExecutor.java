@@ -5,12 +5,13 @@ import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.utils.Constants;
 import cn.holmes.rpt.client.cache.ProxyChannelCache;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.internal.EmptyArrays;
 
 import java.util.Objects;
+import java.util.Optional;
 
 public class DisconnectedExecutor implements MessageExecutor {
     @Override
@@ -20,10 +21,19 @@ public class DisconnectedExecutor implements MessageExecutor {
 
     @Override
     public void execute(ChannelHandlerContext context, Message message) {
+        if (message.getStreamId() != 0) {
+            // 多路复用: 只关闭对应流的内网连接
+            Channel localChannel = Optional.ofNullable(context.channel().attr(Constants.STREAMS).get()).map(streamMap -> streamMap.remove(message.getStreamId())).orElse(null);
+            if (Objects.nonNull(localChannel)) {
+                localChannel.attr(Constants.PROXY).set(null);
+                localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            }
+            return;
+        }
         Channel localChannel = context.channel().attr(Constants.LOCAL).getAndSet(null);
         if (Objects.nonNull(localChannel)) {
             localChannel.attr(Constants.PROXY).set(null);
-            localChannel.writeAndFlush(EmptyArrays.EMPTY_BYTES).addListener(ChannelFutureListener.CLOSE);
+            localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
         }
         ProxyChannelCache.put(context.channel());
     }
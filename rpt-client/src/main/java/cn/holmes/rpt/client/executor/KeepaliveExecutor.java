@@ -0,0 +1,23 @@
+package cn.holmes.rpt.client.executor;
+
+import cn.holmes.rpt.base.executor.MessageExecutor;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * 记录最近一次收到服务端心跳的时间,连接池据此判断闲置连接是否仍然可用
+ */
+public class KeepaliveExecutor implements MessageExecutor {
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.TYPE_KEEPALIVE;
+    }
+
+    @Override
+    public void execute(ChannelHandlerContext context, Message message) {
+        context.channel().attr(Constants.Client.ALIVE_TIME).set(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,27 @@
+package cn.holmes.rpt.client.executor;
+
+import cn.holmes.rpt.base.executor.MessageExecutor;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Objects;
+
+public class PingExecutor implements MessageExecutor {
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.TYPE_PING;
+    }
+
+    @Override
+    public void execute(ChannelHandlerContext context, Message message) {
+        ByteBuf data = message.getData();
+        if (Objects.isNull(data)) {
+            return;
+        }
+        // 原样返回探测的发送时间,由服务端计算往返耗时
+        context.writeAndFlush(new Message(MessageType.TYPE_PONG, null, data.retain()));
+    }
+}
@@ -0,0 +1,27 @@
+package cn.holmes.rpt.client.executor;
+
+import cn.holmes.rpt.base.executor.MessageExecutor;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Objects;
+
+public class WindowUpdateExecutor implements MessageExecutor {
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.TYPE_WINDOW_UPDATE;
+    }
+
+    @Override
+    public void execute(ChannelHandlerContext context, Message message) {
+        ByteBuf data = message.getData();
+        if (Objects.isNull(data) || data.readableBytes() < 4) {
+            return;
+        }
+        StreamUtils.increase(context.channel(), message.getStreamId(), data.readInt());
+    }
+}
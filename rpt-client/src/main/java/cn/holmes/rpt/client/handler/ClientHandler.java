@@ -6,13 +6,14 @@ import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.utils.Application;
 import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.StreamUtils;
 import cn.holmes.rpt.client.cache.ProxyChannelCache;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.internal.EmptyArrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,8 +32,9 @@ public class ClientHandler extends SimpleChannelInboundHandler<Message> {
     public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
         Channel localChannel = ctx.channel().attr(Constants.LOCAL).get();
         if (Objects.nonNull(localChannel)) {
-            localChannel.config().setAutoRead(ctx.channel().isWritable());
+            StreamUtils.updateAutoRead(localChannel, ctx.channel());
         }
+        StreamUtils.updateAutoRead(ctx.channel());
         super.channelWritabilityChanged(ctx);
     }
 
@@ -50,6 +52,7 @@ public class ClientHandler extends SimpleChannelInboundHandler<Message> {
         if (Objects.nonNull(application)) {
             logger.info("客户端-服务端连接中断,{}:{}", Config.getClientConfig().getServerIp(), Config.getClientConfig().getServerPort());
             Optional.ofNullable(ctx.channel().attr(Constants.CHANNELS).get()).ifPresent(this::clear);
+            ctx.channel().attr(Constants.STREAMS).set(null);
             application.start(15);
             return;
         }
@@ -57,7 +60,7 @@ public class ClientHandler extends SimpleChannelInboundHandler<Message> {
         Channel localChannel = ctx.channel().attr(Constants.LOCAL).getAndSet(null);
         if (Objects.nonNull(localChannel) && localChannel.isActive()) {
             localChannel.attr(Constants.PROXY).set(null);
-            localChannel.writeAndFlush(EmptyArrays.EMPTY_BYTES).addListener(ChannelFutureListener.CLOSE);
+            localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
         }
         ProxyChannelCache.delete(ctx.channel());
     }
@@ -65,7 +68,7 @@ public class ClientHandler extends SimpleChannelInboundHandler<Message> {
     private void clear(Map<String, Channel> channelMap) {
         for (Channel localChannel : channelMap.values()) {
             localChannel.attr(Constants.PROXY).set(null);
-            localChannel.writeAndFlush(EmptyArrays.EMPTY_BYTES).addListener(ChannelFutureListener.CLOSE);
+            localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
         }
         channelMap.clear();
     }
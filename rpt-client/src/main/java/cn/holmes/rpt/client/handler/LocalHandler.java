@@ -4,10 +4,15 @@ import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.internal.EmptyArrays;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -15,23 +20,19 @@ import java.util.Optional;
 /**
  * 实际内网连接处理器
  */
-public class LocalHandler extends SimpleChannelInboundHandler<byte[]> {
+public class LocalHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     private final Channel channel;
     private final Meta meta;
+    /**
+     * 多路复用时的流编号,0表示使用独立的代理连接
+     */
+    private final int streamId;
 
-    public LocalHandler(Channel channel, Meta meta) {
+    public LocalHandler(Channel channel, Meta meta, int streamId) {
         this.channel = channel;
         this.meta = meta;
-    }
-
-    @Override
-    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
-        Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
-        if (Objects.nonNull(proxyChannel)) {
-            proxyChannel.config().setAutoRead(ctx.channel().isWritable());
-        }
-        super.channelWritabilityChanged(ctx);
+        this.streamId = streamId;
     }
 
     @Override
@@ -39,19 +40,39 @@ public class LocalHandler extends SimpleChannelInboundHandler<byte[]> {
         ctx.channel().config().setAutoRead(false);
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
         channel.attr(Constants.CHANNELS).get().put(meta.getChannelId(), ctx.channel());
-        send(proxyChannel, MessageType.TYPE_CONNECTED, EmptyArrays.EMPTY_BYTES);
-        ctx.channel().config().setAutoRead(true);
+        // 服务端可以由内核转发且本端代理连接不加密、不压缩时,应答CONNECTED后代理连接切换为原始字节流
+        meta.setSplice(meta.isSplice() && streamId == 0 && Objects.isNull(ctx.channel().attr(Constants.COMPRESSOR).get()) && SpliceUtils.isSupported(ctx.channel(), proxyChannel));
+        ChannelFuture future = send(ctx, proxyChannel, MessageType.TYPE_CONNECTED, Unpooled.EMPTY_BUFFER);
+        if (!meta.isSplice()) {
+            ctx.channel().config().setAutoRead(true);
+            return;
+        }
+        SpliceUtils.detach(proxyChannel);
+        future.addListener((ChannelFutureListener) connectedFuture -> {
+            if (connectedFuture.isSuccess()) {
+                SpliceUtils.splice(ctx.channel(), proxyChannel);
+            } else {
+                ctx.close();
+            }
+        });
     }
 
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, byte[] bytes) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) throws Exception {
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
         if (Objects.isNull(proxyChannel)) {
             ctx.close();
             return;
         }
-        send(proxyChannel, MessageType.TYPE_DATA, bytes);
+        if (SpliceUtils.isSpliced(proxyChannel)) {
+            // 内核转发开始前读取到的数据按原始字节写出,与之后的转发共用代理连接的写出队列,顺序不变
+            proxyChannel.writeAndFlush(buf.retain());
+            return;
+        }
+        int size = buf.readableBytes();
+        send(ctx, proxyChannel, MessageType.TYPE_DATA, buf.retain());
+        StreamUtils.consume(ctx.channel(), proxyChannel, size);
     }
 
 
@@ -61,9 +82,16 @@ public class LocalHandler extends SimpleChannelInboundHandler<byte[]> {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         Optional.ofNullable(channel.attr(Constants.CHANNELS).get()).ifPresent(channelMap -> channelMap.remove(meta.getChannelId()));
+        if (streamId != 0) {
+            Optional.ofNullable(channel.attr(Constants.STREAMS).get()).ifPresent(streamMap -> streamMap.remove(streamId, ctx.channel()));
+        }
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
         if (Objects.nonNull(proxyChannel) && proxyChannel.isActive()) {
-            send(proxyChannel, MessageType.TYPE_DISCONNECTED, EmptyArrays.EMPTY_BYTES);
+            if (SpliceUtils.isSpliced(proxyChannel)) {
+                proxyChannel.close();
+                return;
+            }
+            send(ctx, proxyChannel, MessageType.TYPE_DISCONNECTED, Unpooled.EMPTY_BUFFER);
         }
     }
 
@@ -75,7 +103,10 @@ public class LocalHandler extends SimpleChannelInboundHandler<byte[]> {
         ctx.close();
     }
 
-    private void send(Channel proxyChannel, MessageType type, byte[] data) {
-        proxyChannel.writeAndFlush(new Message(type, meta, data));
+    private ChannelFuture send(ChannelHandlerContext ctx, Channel proxyChannel, MessageType type, ByteBuf data) {
+        // 数据消息依赖代理连接上已绑定的内网连接,无需元数据
+        Message message = new Message(type, type.hasMeta() ? meta : null, data).setStreamId(streamId);
+        Optional.ofNullable(ctx.channel().attr(Constants.COMPRESSOR).get()).ifPresent(compressor -> compressor.compress(ctx.alloc(), message));
+        return proxyChannel.writeAndFlush(message);
     }
 }
@@ -3,22 +3,27 @@ package cn.holmes.rpt.server;
 import cn.holmes.rpt.base.config.ServerConfig;
 import cn.holmes.rpt.base.utils.Application;
 import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.TransportFactory;
+import cn.holmes.rpt.server.coder.HttpEncoder;
+import cn.holmes.rpt.server.handler.HostSniffHandler;
 import cn.holmes.rpt.server.handler.RedirectHandler;
 import cn.holmes.rpt.server.handler.RequestHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 public class HttpApplication extends Application<ServerBootstrap> {
@@ -26,22 +31,39 @@ public class HttpApplication extends Application<ServerBootstrap> {
     private static final Logger logger = LoggerFactory.getLogger(HttpApplication.class);
 
     private final ServerBootstrap httpBootstrap = new ServerBootstrap();
-    private final NioEventLoopGroup serverBossGroup = new NioEventLoopGroup();
-    private final NioEventLoopGroup serverWorkerGroup = new NioEventLoopGroup();
+    private EventLoopGroup serverBossGroup;
+    private EventLoopGroup serverWorkerGroup;
 
     @Override
     public Application<ServerBootstrap> buildBootstrap() throws IOException {
         ServerConfig serverConfig = Config.getServerConfig();
-        httpBootstrap.group(serverBossGroup, serverWorkerGroup).channel(NioServerSocketChannel.class).childOption(ChannelOption.SO_KEEPALIVE, true).childHandler(new ChannelInitializer<SocketChannel>() {
+        serverBossGroup = TransportFactory.newEventLoopGroup(serverConfig.getTransport(), 0);
+        serverWorkerGroup = TransportFactory.newEventLoopGroup(serverConfig.getTransport(), 0);
+        httpBootstrap.group(serverBossGroup, serverWorkerGroup).channel(TransportFactory.serverSocketChannel(serverBossGroup)).childHandler(new ChannelInitializer<SocketChannel>() {
 
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(new HttpServerCodec());
-                ch.pipeline().addLast(new HttpObjectAggregator(8 * 1024 * 1024));
+                if (serverConfig.getFlushConsolidation() > 0) {
+                    ch.pipeline().addLast(new FlushConsolidationHandler(serverConfig.getFlushConsolidation(), true));
+                }
+                if (serverConfig.getHttpsPort() != 0) {
+                    ch.pipeline().addLast(new HttpServerCodec());
+                    ch.pipeline().addLast(new RedirectHandler());
+                    return;
+                }
+                if (serverConfig.isHostSniff()) {
+                    ch.pipeline().addLast(new HostSniffHandler());
+                    return;
+                }
+                ch.pipeline().addLast(new HttpRequestDecoder());
+                ch.pipeline().addLast(new HttpEncoder.ResponseEncoder());
+                ch.pipeline().addLast(new HttpServerExpectContinueHandler());
                 ch.pipeline().addLast(new ChunkedWriteHandler());
-                ch.pipeline().addLast(serverConfig.getHttpsPort() == 0 ? new RequestHandler() : new RedirectHandler());
+                ch.pipeline().addLast(new RequestHandler());
             }
         });
+        // 外部连接建立时尚未确定域名,按全局配置设置,选出客户端后再按穿透配置重新设置
+        SocketProfiles.apply(httpBootstrap, SocketProfiles.of(Config.getServerConfig().getSocketProfile()));
         return this;
     }
 
@@ -67,8 +89,8 @@ public class HttpApplication extends Application<ServerBootstrap> {
 
     @Override
     public void stop() {
-        serverBossGroup.shutdownGracefully();
-        serverWorkerGroup.shutdownGracefully();
+        Optional.ofNullable(serverBossGroup).ifPresent(EventLoopGroup::shutdownGracefully);
+        Optional.ofNullable(serverWorkerGroup).ifPresent(EventLoopGroup::shutdownGracefully);
     }
 
     @Override
@@ -3,16 +3,21 @@ package cn.holmes.rpt.server;
 import cn.holmes.rpt.base.config.ServerConfig;
 import cn.holmes.rpt.base.utils.Application;
 import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.TransportFactory;
+import cn.holmes.rpt.server.coder.HttpEncoder;
+import cn.holmes.rpt.server.handler.HostSniffHandler;
 import cn.holmes.rpt.server.handler.RequestHandler;
+import cn.holmes.rpt.server.handler.SniRouteHandler;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
@@ -31,23 +36,42 @@ public class HttpsApplication extends Application<ServerBootstrap> {
     private static final Logger logger = LoggerFactory.getLogger(HttpsApplication.class);
 
     private final ServerBootstrap httpsBootstrap = new ServerBootstrap();
-    private final NioEventLoopGroup serverBossGroup = new NioEventLoopGroup();
-    private final NioEventLoopGroup serverWorkerGroup = new NioEventLoopGroup();
+    private EventLoopGroup serverBossGroup;
+    private EventLoopGroup serverWorkerGroup;
 
     @Override
     public Application<ServerBootstrap> buildBootstrap() throws IOException {
+        serverBossGroup = TransportFactory.newEventLoopGroup(Config.getServerConfig().getTransport(), 0);
+        serverWorkerGroup = TransportFactory.newEventLoopGroup(Config.getServerConfig().getTransport(), 0);
         SslContext sslContext = buildHttpsSslContext();
-        httpsBootstrap.group(serverBossGroup, serverWorkerGroup).channel(NioServerSocketChannel.class).childOption(ChannelOption.SO_KEEPALIVE, true).childHandler(new ChannelInitializer<SocketChannel>() {
+        httpsBootstrap.group(serverBossGroup, serverWorkerGroup).channel(TransportFactory.serverSocketChannel(serverBossGroup)).childHandler(new ChannelInitializer<SocketChannel>() {
 
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
-                ch.pipeline().addLast(new HttpServerCodec());
-                ch.pipeline().addLast(new HttpObjectAggregator(8 * 1024 * 1024));
-                ch.pipeline().addLast(new ChunkedWriteHandler());
-                ch.pipeline().addLast(new RequestHandler());
+                // 先读取SNI,透传的域名不在服务端解密
+                ch.pipeline().addLast(new SniRouteHandler(new ChannelInitializer<Channel>() {
+
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                        if (Config.getServerConfig().getFlushConsolidation() > 0) {
+                            ch.pipeline().addLast(new FlushConsolidationHandler(Config.getServerConfig().getFlushConsolidation(), true));
+                        }
+                        if (Config.getServerConfig().isHostSniff()) {
+                            ch.pipeline().addLast(new HostSniffHandler());
+                            return;
+                        }
+                        ch.pipeline().addLast(new HttpRequestDecoder());
+                        ch.pipeline().addLast(new HttpEncoder.ResponseEncoder());
+                        ch.pipeline().addLast(new HttpServerExpectContinueHandler());
+                        ch.pipeline().addLast(new ChunkedWriteHandler());
+                        ch.pipeline().addLast(new RequestHandler());
+                    }
+                }));
             }
         });
+        // 外部连接建立时尚未确定域名,按全局配置设置,选出客户端后再按穿透配置重新设置
+        SocketProfiles.apply(httpsBootstrap, SocketProfiles.of(Config.getServerConfig().getSocketProfile()));
         return this;
     }
 
@@ -73,8 +97,8 @@ public class HttpsApplication extends Application<ServerBootstrap> {
 
     @Override
     public void stop() {
-        serverBossGroup.shutdownGracefully();
-        serverWorkerGroup.shutdownGracefully();
+        Optional.ofNullable(serverBossGroup).ifPresent(EventLoopGroup::shutdownGracefully);
+        Optional.ofNullable(serverWorkerGroup).ifPresent(EventLoopGroup::shutdownGracefully);
     }
 
     @Override
@@ -6,18 +6,25 @@ import cn.holmes.rpt.base.config.ServerConfig;
 import cn.holmes.rpt.base.handler.IdleCheckHandler;
 import cn.holmes.rpt.base.utils.Application;
 import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.SslSessions;
+import cn.holmes.rpt.base.utils.StringUtils;
+import cn.holmes.rpt.base.utils.TransportFactory;
 import cn.holmes.rpt.server.handler.ServerHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.OptionalSslHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import org.slf4j.Logger;
@@ -25,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 public class ServerApplication extends Application<ServerBootstrap> {
@@ -32,8 +40,8 @@ public class ServerApplication extends Application<ServerBootstrap> {
     private static final Logger logger = LoggerFactory.getLogger(ServerApplication.class);
 
     private final ServerBootstrap bootstrap = new ServerBootstrap();
-    private final NioEventLoopGroup serverBossGroup = new NioEventLoopGroup();
-    private final NioEventLoopGroup serverWorkerGroup = new NioEventLoopGroup();
+    private EventLoopGroup serverBossGroup;
+    private EventLoopGroup serverWorkerGroup;
 
     public static void main(String[] args) throws Exception {
         Application.run(args, new ServerApplication(), new HttpApplication(), new HttpsApplication());
@@ -42,29 +50,59 @@ public class ServerApplication extends Application<ServerBootstrap> {
     @Override
     public Application<ServerBootstrap> config(String[] args) {
         Config.readServerConfig(args);
+        ServerConfig serverConfig = Config.getServerConfig();
+        // 统计页面可按客户端推算穿透的流量和在线情况,开启时必须校验账号密码
+        if (StringUtils.hasText(serverConfig.getMetricsPath()) && !StringUtils.hasText(serverConfig.getMetricsToken())) {
+            logger.error("已开启穿透统计{},未配置访问的账号密码metricsToken,服务端拒绝启动", serverConfig.getMetricsPath());
+            throw new IllegalStateException("开启穿透统计时必须配置metricsToken");
+        }
         return this;
     }
 
     @Override
     public Application<ServerBootstrap> buildBootstrap() throws IOException {
+        serverBossGroup = TransportFactory.newEventLoopGroup(Config.getServerConfig().getTransport(), 0);
+        serverWorkerGroup = TransportFactory.newEventLoopGroup(Config.getServerConfig().getTransport(), 0);
         SslContext sslContext = buildServerSslContext();
-        bootstrap.group(serverBossGroup, serverWorkerGroup).channel(NioServerSocketChannel.class).childHandler(new ChannelInitializer<SocketChannel>() {
+        bootstrap.group(serverBossGroup, serverWorkerGroup).channel(TransportFactory.serverSocketChannel(serverBossGroup)).childHandler(new ChannelInitializer<SocketChannel>() {
 
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                if (Config.getServerConfig().isPlaintextProxy()) {
+                    // 按首个数据包区分TLS连接与未加密的代理连接,未加密的连接在ServerHandler中限制只能作为代理连接
+                    ch.pipeline().addLast(new OptionalSslHandler(sslContext) {
+                        @Override
+                        protected SslHandler newSslHandler(ChannelHandlerContext context, SslContext sslContext) {
+                            return SslSessions.record(super.newSslHandler(context, sslContext));
+                        }
+
+                        @Override
+                        protected ChannelHandler newNonSslHandler(ChannelHandlerContext context) {
+                            // 未加密的代理连接只有新版本客户端使用,不经过gzip
+                            context.pipeline().remove(GzipCodec.class);
+                            return null;
+                        }
+                    });
+                } else {
+                    ch.pipeline().addLast(SslSessions.record(sslContext.newHandler(ch.alloc())));
+                }
                 ch.pipeline().addLast(new GzipCodec());
-                // 固定帧长解码器
-                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
-                ch.pipeline().addLast(new LengthFieldPrepender(4));
+                // 合并刷新,多个消息合并为一个TLS记录写出
+                if (Config.getServerConfig().getFlushConsolidation() > 0) {
+                    ch.pipeline().addLast(new FlushConsolidationHandler(Config.getServerConfig().getFlushConsolidation(), true));
+                }
                 ch.pipeline().addLast(new ChunkedWriteHandler());
-                // 自定义协议编解码器
+                // 自定义协议编解码器,包含拆帧
                 ch.pipeline().addLast(new MessageCodec());
                 ch.pipeline().addLast(new IdleCheckHandler(60, 40, 0));
                 // 代理客户端连接代理服务器处理器
                 ch.pipeline().addLast(new ServerHandler());
             }
         });
+        SocketProfiles.apply(bootstrap, SocketProfiles.of(Config.getServerConfig().getSocketProfile()));
+        if (Config.getServerConfig().isSplice()) {
+            SpliceUtils.levelTriggered(bootstrap);
+        }
         return this;
     }
 
@@ -85,8 +123,8 @@ public class ServerApplication extends Application<ServerBootstrap> {
 
     @Override
     public void stop() {
-        serverBossGroup.shutdownGracefully();
-        serverWorkerGroup.shutdownGracefully();
+        Optional.ofNullable(serverBossGroup).ifPresent(EventLoopGroup::shutdownGracefully);
+        Optional.ofNullable(serverWorkerGroup).ifPresent(EventLoopGroup::shutdownGracefully);
     }
 
     @Override
@@ -96,7 +134,10 @@ public class ServerApplication extends Application<ServerBootstrap> {
 
     private static SslContext buildServerSslContext() throws IOException {
         try (InputStream certChainFile = ClassLoader.getSystemResourceAsStream("server.crt"); InputStream keyFile = ClassLoader.getSystemResourceAsStream("pkcs8_server.key"); InputStream rootFile = ClassLoader.getSystemResourceAsStream("ca.crt")) {
-            return SslContextBuilder.forServer(certChainFile, keyFile).trustManager(rootFile).clientAuth(ClientAuth.REQUIRE).sslProvider(SslProvider.OPENSSL).build();
+            ServerConfig serverConfig = Config.getServerConfig();
+            SslContext sslContext = SslContextBuilder.forServer(certChainFile, keyFile).trustManager(rootFile).clientAuth(ClientAuth.REQUIRE).sslProvider(SslProvider.OPENSSL)
+                    .sessionCacheSize(serverConfig.getSslSessionCacheSize()).sessionTimeout(serverConfig.getSslSessionTimeout()).build();
+            return SslSessions.enableTickets(sslContext);
         }
     }
 }
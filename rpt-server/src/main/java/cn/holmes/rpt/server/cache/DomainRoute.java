@@ -0,0 +1,40 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.RemoteConfig;
+
+/**
+ * 客户端注册的域名和路径,domain为首个注册时的原始写法,同一秘钥以同一写法的后续注册加入负载均衡
+ */
+public class DomainRoute {
+
+    private final String domain;
+
+    private final RemoteConfig config;
+
+    private final MemberPool pool;
+
+    public DomainRoute(String domain, Member member) {
+        this.domain = domain;
+        this.config = member.getConfig();
+        this.pool = new MemberPool(member.getClientKey(), config);
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * 首个注册的客户端的配置,授权和透传以此为准
+     */
+    public RemoteConfig getConfig() {
+        return config;
+    }
+
+    public MemberPool getPool() {
+        return pool;
+    }
+
+    public String getToken() {
+        return config.getToken();
+    }
+}
@@ -0,0 +1,272 @@
+package cn.holmes.rpt.server.cache;
+
+import io.netty.channel.Channel;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * 域名路由表,按标签从右向左组织的前缀树
+ * <p>
+ * 支持三种写法,匹配优先级依次降低:
+ * 精确匹配(test.domain.com)、单级通配(*.team.domain.com)、后缀匹配(.domain.com,包含自身及任意层级的子域名,取最长的后缀);
+ * 每个域名下再按路径前缀区分穿透配置,见{@link PathTrie};
+ * 注册和注销时复制路径上的节点生成新的快照后整体替换,查询无锁且不分配内存,耗时只与标签数有关;
+ * 各路径的负载均衡在快照间共用,见{@link PathTrie}
+ */
+public class DomainTrie {
+
+    private static final String WILDCARD = "*.";
+
+    private static final String SUFFIX = ".";
+
+    private volatile Node root = Node.EMPTY;
+
+    /**
+     * 按请求的Host查找,忽略端口、末尾的点和大小写
+     */
+    public PathTrie match(String host) {
+        if (host == null) {
+            return null;
+        }
+        int end = host.indexOf(':');
+        end = end < 0 ? host.length() : end;
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        Node node = root;
+        PathTrie suffix = null;
+        int labelEnd = end;
+        while (labelEnd > 0) {
+            int dot = host.lastIndexOf('.', labelEnd - 1);
+            int labelStart = dot + 1;
+            if (labelStart == labelEnd) {
+                return null;
+            }
+            Node child = node.child(host, labelStart, labelEnd);
+            if (dot < 0) {
+                // 最后一个标签
+                if (child != null && child.exact != null) {
+                    return child.exact;
+                }
+                if (node.wildcard != null) {
+                    return node.wildcard;
+                }
+                return child != null && child.suffix != null ? child.suffix : suffix;
+            }
+            if (child == null) {
+                return suffix;
+            }
+            node = child;
+            suffix = node.suffix == null ? suffix : node.suffix;
+            labelEnd = dot;
+        }
+        return null;
+    }
+
+    /**
+     * 相同写法的域名和路径已被同一秘钥注册时加入其负载均衡
+     *
+     * @return 该域名和路径下的客户端数,已被其他秘钥注册时返回0
+     */
+    public synchronized int register(Member member) {
+        String domain = member.getConfig().getDomain();
+        String[] labels = labels(domain);
+        Kind kind = kind(domain);
+        PathTrie current = get(root, labels, kind);
+        DomainRoute route = current == null ? null : current.get(member.getConfig().getPath());
+        if (route != null) {
+            return route.getPool().accept(member) ? route.getPool().add(member) : 0;
+        }
+        route = new DomainRoute(domain, member);
+        route.getPool().add(member);
+        root = put(root, labels, labels.length - 1, kind, route);
+        return 1;
+    }
+
+    /**
+     * 只注销指定客户端在该域名下注册的路径,其余客户端继续提供服务
+     */
+    public synchronized void unregister(String domain, Channel channel) {
+        if (!isValid(domain)) {
+            return;
+        }
+        String[] labels = labels(domain);
+        root = remove(root, labels, labels.length - 1, kind(domain), channel);
+    }
+
+    public static boolean isValid(String domain) {
+        if (domain == null) {
+            return false;
+        }
+        String base = base(domain);
+        if (base.isEmpty() || base.startsWith(SUFFIX) || base.endsWith(SUFFIX) || base.contains("..")) {
+            return false;
+        }
+        // 通配和后缀至少包含两级标签,.com、*.com会接管其他客户端及服务端自身(统计路径)未注册的域名
+        if (kind(domain) != Kind.EXACT && base.indexOf('.') < 0) {
+            return false;
+        }
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            if (c == '*' || c == ':' || c == '/' || Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Kind kind(String domain) {
+        return domain.startsWith(WILDCARD) ? Kind.WILDCARD : domain.startsWith(SUFFIX) ? Kind.SUFFIX : Kind.EXACT;
+    }
+
+    private static String base(String domain) {
+        return domain.startsWith(WILDCARD) ? domain.substring(WILDCARD.length()) : domain.startsWith(SUFFIX) ? domain.substring(SUFFIX.length()) : domain;
+    }
+
+    private static String[] labels(String domain) {
+        return base(domain).toLowerCase(Locale.ROOT).split("\\.");
+    }
+
+    private static PathTrie get(Node node, String[] labels, Kind kind) {
+        for (int i = labels.length - 1; i >= 0 && node != null; i--) {
+            node = node.child(labels[i], 0, labels[i].length());
+        }
+        return node == null ? null : node.get(kind);
+    }
+
+    private static Node put(Node node, String[] labels, int index, Kind kind, DomainRoute route) {
+        if (index < 0) {
+            return node.with(kind, Optional.ofNullable(node.get(kind)).orElse(PathTrie.EMPTY).with(route));
+        }
+        String label = labels[index];
+        Node child = node.child(label, 0, label.length());
+        return node.withChild(label, put(child == null ? Node.EMPTY : child, labels, index - 1, kind, route));
+    }
+
+    private static Node remove(Node node, String[] labels, int index, Kind kind, Channel channel) {
+        if (index < 0) {
+            PathTrie current = node.get(kind);
+            PathTrie updated = current == null ? null : current.without(channel);
+            return updated == current ? node : node.with(kind, updated.isEmpty() ? null : updated);
+        }
+        String label = labels[index];
+        Node child = node.child(label, 0, label.length());
+        if (child == null) {
+            return node;
+        }
+        Node updated = remove(child, labels, index - 1, kind, channel);
+        if (updated == child) {
+            return node;
+        }
+        return updated.isEmpty() ? node.withoutChild(label) : node.withChild(label, updated);
+    }
+
+    private enum Kind {
+        EXACT, WILDCARD, SUFFIX
+    }
+
+    /**
+     * 不可变节点,子节点使用开放寻址的数组保存,按字符区间查找时无需截取字符串
+     */
+    private static final class Node {
+
+        private static final Node EMPTY = new Node(new String[0], new Node[0], 0, null, null, null);
+
+        private final String[] labels;
+
+        private final Node[] children;
+
+        private final int size;
+
+        private final PathTrie exact;
+
+        private final PathTrie wildcard;
+
+        private final PathTrie suffix;
+
+        private Node(String[] labels, Node[] children, int size, PathTrie exact, PathTrie wildcard, PathTrie suffix) {
+            this.labels = labels;
+            this.children = children;
+            this.size = size;
+            this.exact = exact;
+            this.wildcard = wildcard;
+            this.suffix = suffix;
+        }
+
+        private Node child(String host, int start, int end) {
+            if (size == 0) {
+                return null;
+            }
+            int length = end - start;
+            int mask = labels.length - 1;
+            for (int i = hash(host, start, end) & mask; labels[i] != null; i = (i + 1) & mask) {
+                if (labels[i].length() == length && labels[i].regionMatches(true, 0, host, start, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private PathTrie get(Kind kind) {
+            return kind == Kind.EXACT ? exact : kind == Kind.WILDCARD ? wildcard : suffix;
+        }
+
+        private Node with(Kind kind, PathTrie route) {
+            return new Node(labels, children, size, kind == Kind.EXACT ? route : exact, kind == Kind.WILDCARD ? route : wildcard, kind == Kind.SUFFIX ? route : suffix);
+        }
+
+        private boolean isEmpty() {
+            return size == 0 && exact == null && wildcard == null && suffix == null;
+        }
+
+        private Node withChild(String label, Node child) {
+            boolean exists = child(label, 0, label.length()) != null;
+            return rebuild(exists ? size : size + 1, label, child, null);
+        }
+
+        private Node withoutChild(String label) {
+            return rebuild(size - 1, null, null, label);
+        }
+
+        /**
+         * 复制子节点数组,容量保持在元素数的2倍以上
+         */
+        private Node rebuild(int newSize, String putLabel, Node putChild, String removeLabel) {
+            int capacity = 2;
+            while (capacity < newSize * 2) {
+                capacity <<= 1;
+            }
+            String[] newLabels = new String[newSize == 0 ? 0 : capacity];
+            Node[] newChildren = new Node[newLabels.length];
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] != null && !labels[i].equals(putLabel) && !labels[i].equals(removeLabel)) {
+                    insert(newLabels, newChildren, labels[i], children[i]);
+                }
+            }
+            if (putLabel != null) {
+                insert(newLabels, newChildren, putLabel, putChild);
+            }
+            return new Node(newLabels, newChildren, newSize, exact, wildcard, suffix);
+        }
+
+        private static void insert(String[] labels, Node[] children, String label, Node child) {
+            int mask = labels.length - 1;
+            int i = hash(label, 0, label.length()) & mask;
+            while (labels[i] != null) {
+                i = (i + 1) & mask;
+            }
+            labels[i] = label;
+            children[i] = child;
+        }
+
+        private static int hash(String value, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
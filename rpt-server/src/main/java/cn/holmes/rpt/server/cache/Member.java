@@ -0,0 +1,87 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.protocol.ProbeState;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.channel.Channel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载均衡中的一个客户端,记录其承载的外部连接数和建立连接的平均耗时
+ */
+public class Member {
+
+    private final Channel channel;
+
+    private final RemoteConfig config;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * 建立连接耗时的指数加权平均值,单位纳秒,为0时尚无样本
+     */
+    private final AtomicLong latency = new AtomicLong();
+
+    public Member(Channel channel, RemoteConfig config) {
+        this.channel = channel;
+        this.config = config;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public RemoteConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 注册时使用的秘钥,同一端口或域名路径只允许相同秘钥的客户端共同承载
+     */
+    public String getClientKey() {
+        return channel.attr(Constants.Server.CLIENT_KEY).get();
+    }
+
+    /**
+     * 会话保持时写入Cookie的标识
+     */
+    public String getId() {
+        return channel.id().asShortText();
+    }
+
+    /**
+     * 注册应答发出后才分配外部连接,控制连接断开或连续未应答探测时不再分配
+     */
+    public boolean isReady() {
+        ProbeState probeState = channel.attr(Constants.Server.PROBE).get();
+        if (probeState != null && !probeState.isHealthy()) {
+            return false;
+        }
+        return ServerChannelCache.getServerChannelMap().get(channel.id().asLongText()) == channel;
+    }
+
+    public void acquire() {
+        connections.incrementAndGet();
+    }
+
+    public void release() {
+        connections.decrementAndGet();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public void record(long nanos) {
+        latency.accumulateAndGet(nanos, (average, sample) -> average == 0 ? sample : average + (sample - average) / 8);
+    }
+
+    /**
+     * 未采样的客户端优先,以便尽快获得样本
+     */
+    long cost() {
+        return latency.get() * (connections.get() + 1);
+    }
+}
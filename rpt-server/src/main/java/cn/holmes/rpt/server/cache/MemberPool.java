@@ -0,0 +1,161 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.BalanceType;
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.SocketProfile;
+import cn.holmes.rpt.base.config.StickyType;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import io.netty.channel.Channel;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一域名路径或同一端口下注册的多个客户端,按策略分配外部连接
+ * <p>
+ * 均衡策略、会话保持方式和TCP参数组以首个注册的客户端为准,只接受与其秘钥相同的客户端;成员数组写时复制,选择时无锁
+ */
+public class MemberPool {
+
+    private final String clientKey;
+
+    private final BalanceType balance;
+
+    private final StickyType sticky;
+
+    private final SocketProfile socketProfile;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private volatile Member[] members = new Member[0];
+
+    public MemberPool(String clientKey, RemoteConfig config) {
+        this.clientKey = clientKey;
+        this.balance = Optional.ofNullable(config.getBalance()).orElse(BalanceType.ROUND_ROBIN);
+        this.sticky = config.getSticky();
+        this.socketProfile = SocketProfiles.of(config, Config.getServerConfig().getSocketProfile());
+    }
+
+    public StickyType getSticky() {
+        return sticky;
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    /**
+     * 秘钥不同的客户端不能加入,以免其他租户分走该端口或域名的外部连接
+     */
+    public boolean accept(Member member) {
+        return Objects.equals(clientKey, member.getClientKey());
+    }
+
+    public synchronized int add(Member member) {
+        Member[] newMembers = Arrays.copyOf(members, members.length + 1);
+        newMembers[members.length] = member;
+        members = newMembers;
+        return newMembers.length;
+    }
+
+    public synchronized void remove(Channel channel) {
+        members = Arrays.stream(members).filter(member -> member.getChannel() != channel).toArray(Member[]::new);
+    }
+
+    /**
+     * 包含尚未完成注册的客户端
+     */
+    public boolean isEmpty() {
+        return members.length == 0;
+    }
+
+    public boolean isAvailable() {
+        for (Member member : members) {
+            if (member.isReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按会话保持写入的标识查找
+     */
+    public Member get(String id) {
+        for (Member member : members) {
+            if (Objects.equals(member.getId(), id) && member.isReady()) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 开启会话保持时按来源IP选择,无法读取Cookie的连接同样按来源IP
+     */
+    public Member select(Channel channel) {
+        SocketAddress address = channel.remoteAddress();
+        if (sticky != null && address instanceof InetSocketAddress) {
+            return select(((InetSocketAddress) address).getAddress().getHostAddress());
+        }
+        return select((String) null);
+    }
+
+    /**
+     * @param key 会话保持的键,为空时按均衡策略选择
+     * @return 没有可用的客户端时返回null
+     */
+    public Member select(String key) {
+        Member[] snapshot = members;
+        if (key != null) {
+            return rendezvous(snapshot, key);
+        }
+        int start = Math.floorMod(sequence.getAndIncrement(), Math.max(snapshot.length, 1));
+        Member selected = null;
+        for (int i = 0; i < snapshot.length; i++) {
+            Member member = snapshot[(start + i) % snapshot.length];
+            if (!member.isReady()) {
+                continue;
+            }
+            if (balance == BalanceType.ROUND_ROBIN) {
+                return member;
+            }
+            if (selected == null || (balance == BalanceType.LEAST_CONNECTIONS ? member.getConnections() < selected.getConnections() : member.cost() < selected.cost())) {
+                selected = member;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 最高随机权重哈希,成员变化时只有该成员上的键重新分配
+     */
+    private Member rendezvous(Member[] snapshot, String key) {
+        Member selected = null;
+        int max = 0;
+        for (Member member : snapshot) {
+            if (!member.isReady()) {
+                continue;
+            }
+            int weight = mix(key.hashCode() * 31 + member.getId().hashCode());
+            if (selected == null || Integer.compareUnsigned(weight, max) > 0) {
+                selected = member;
+                max = weight;
+            }
+        }
+        return selected;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,187 @@
+package cn.holmes.rpt.server.cache;
+
+import io.netty.channel.Channel;
+
+import java.util.Arrays;
+
+/**
+ * 同一域名下按路径前缀注册的穿透配置,按路径分段组织的前缀树
+ * <p>
+ * 前缀只在分段边界上匹配(/api 匹配 /api、/api/users,不匹配 /apis),取最长的前缀;
+ * 未填写路径的配置注册在根路径上,匹配所有请求
+ * <p>
+ * 树的结构不可变,增删路径时复制节点;路径上的负载均衡{@link MemberPool}在各快照间共用,成员的增删直接作用于同一个对象,
+ * 已选出路径的请求随即看到客户端的离开
+ */
+public class PathTrie {
+
+    public static final String ROOT = "/";
+
+    static final PathTrie EMPTY = new PathTrie(new String[0], new PathTrie[0], null);
+
+    private final String[] segments;
+
+    private final PathTrie[] children;
+
+    private final DomainRoute route;
+
+    private PathTrie(String[] segments, PathTrie[] children, DomainRoute route) {
+        this.segments = segments;
+        this.children = children;
+        this.route = route;
+    }
+
+    /**
+     * 按请求的URI查找,忽略查询参数,不分配内存
+     */
+    public DomainRoute match(String uri) {
+        int start = 0;
+        int end = uri.length();
+        if (!uri.startsWith(ROOT)) {
+            // 代理形式的请求 http://host/path
+            int scheme = uri.indexOf("://");
+            start = scheme < 0 ? end : uri.indexOf('/', scheme + 3);
+            start = start < 0 ? end : start;
+        }
+        for (int i = start; i < end; i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        PathTrie node = this;
+        DomainRoute matched = route;
+        int index = start;
+        while (index < end) {
+            if (uri.charAt(index) == '/') {
+                index++;
+                continue;
+            }
+            int segmentEnd = index;
+            while (segmentEnd < end && uri.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            node = node.child(uri, index, segmentEnd);
+            if (node == null) {
+                break;
+            }
+            matched = node.route == null ? matched : node.route;
+            index = segmentEnd;
+        }
+        return matched;
+    }
+
+    /**
+     * 只在根路径上注册时返回该配置,此时无需按请求选择,可以直接转发原始数据
+     */
+    public DomainRoute single() {
+        return children.length == 0 ? route : null;
+    }
+
+    public boolean isEmpty() {
+        return children.length == 0 && route == null;
+    }
+
+    public static boolean isValid(String path) {
+        return path == null || path.startsWith(ROOT) && path.indexOf('?') < 0 && path.indexOf('#') < 0 && !path.contains("//");
+    }
+
+    /**
+     * 按注册时的路径精确查找
+     */
+    DomainRoute get(String path) {
+        PathTrie node = this;
+        for (String segment : segments(path)) {
+            node = node.child(segment, 0, segment.length());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.route;
+    }
+
+    /**
+     * @return 相同路径已被注册时返回null
+     */
+    PathTrie with(DomainRoute newRoute) {
+        return with(segments(newRoute.getConfig().getPath()), 0, newRoute);
+    }
+
+    /**
+     * 将指定客户端从所有路径的负载均衡中移除(原地修改共用的负载均衡),不再有客户端的路径从新的快照中移除
+     */
+    PathTrie without(Channel channel) {
+        PathTrie[] newChildren = children;
+        String[] newSegments = segments;
+        for (int i = children.length - 1; i >= 0; i--) {
+            PathTrie child = children[i].without(channel);
+            if (child == children[i]) {
+                continue;
+            }
+            if (newChildren == children) {
+                newChildren = children.clone();
+                newSegments = segments.clone();
+            }
+            if (child.isEmpty()) {
+                newChildren = remove(newChildren, i);
+                newSegments = remove(newSegments, i);
+            } else {
+                newChildren[i] = child;
+            }
+        }
+        DomainRoute newRoute = route;
+        if (route != null) {
+            route.getPool().remove(channel);
+            newRoute = route.getPool().isEmpty() ? null : route;
+        }
+        if (newChildren == children && newRoute == route) {
+            return this;
+        }
+        return new PathTrie(newSegments, newChildren, newRoute);
+    }
+
+    private PathTrie with(String[] path, int index, DomainRoute newRoute) {
+        if (index == path.length) {
+            return route == null ? new PathTrie(segments, children, newRoute) : null;
+        }
+        String segment = path[index];
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].equals(segment)) {
+                PathTrie child = children[i].with(path, index + 1, newRoute);
+                if (child == null) {
+                    return null;
+                }
+                PathTrie[] newChildren = children.clone();
+                newChildren[i] = child;
+                return new PathTrie(segments, newChildren, route);
+            }
+        }
+        PathTrie child = EMPTY.with(path, index + 1, newRoute);
+        String[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+        PathTrie[] newChildren = Arrays.copyOf(children, children.length + 1);
+        newSegments[segments.length] = segment;
+        newChildren[children.length] = child;
+        return new PathTrie(newSegments, newChildren, route);
+    }
+
+    private PathTrie child(String uri, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].length() == length && segments[i].regionMatches(0, uri, start, length)) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    private static String[] segments(String path) {
+        return path == null ? new String[0] : Arrays.stream(path.split(ROOT)).filter(segment -> !segment.isEmpty()).toArray(String[]::new);
+    }
+
+    private static <T> T[] remove(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+}
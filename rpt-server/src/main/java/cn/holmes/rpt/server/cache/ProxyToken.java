@@ -0,0 +1,54 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import io.netty.channel.Channel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * 代理连接的一次性令牌
+ * <p>
+ * 服务端通过已认证的控制连接在CONNECTED请求中下发令牌,令牌保存在对应的外部连接上;
+ * 未加密的代理连接应答CONNECTED时必须带回该令牌,校验通过后令牌作废
+ */
+public class ProxyToken {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ProxyToken() {
+    }
+
+    /**
+     * 为外部连接生成新令牌,之前未使用的令牌作废;多路复用或服务端不接受未加密的代理连接时不下发
+     */
+    public static String issue(Channel localChannel, Channel serverChannel) {
+        if (!Config.getServerConfig().isPlaintextProxy() || StreamUtils.isMultiplex(serverChannel)) {
+            return null;
+        }
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        localChannel.attr(Constants.Server.TOKEN).set(token);
+        return token;
+    }
+
+    /**
+     * 令牌一致时作废并返回true,不一致时保留令牌,不影响客户端的正常应答
+     */
+    public static boolean verify(Channel localChannel, String token) {
+        String expected = localChannel.attr(Constants.Server.TOKEN).get();
+        if (Objects.isNull(expected) || Objects.isNull(token)) {
+            return false;
+        }
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), token.getBytes(StandardCharsets.US_ASCII))) {
+            return false;
+        }
+        return localChannel.attr(Constants.Server.TOKEN).compareAndSet(expected, null);
+    }
+}
@@ -0,0 +1,37 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.TransportFactory;
+import io.netty.channel.EventLoopGroup;
+
+/**
+ * 所有客户端的端口穿透共用的线程组,首次使用时按配置创建
+ */
+public class RemoteGroupCache {
+
+    private static class Holder {
+
+        private static final EventLoopGroup REMOTE_BOSS_GROUP;
+
+        private static final EventLoopGroup REMOTE_WORKER_GROUP;
+
+        static {
+            ServerConfig serverConfig = Config.getServerConfig();
+            REMOTE_BOSS_GROUP = TransportFactory.newEventLoopGroup(serverConfig.getTransport(), serverConfig.getRemoteBossThreads());
+            REMOTE_WORKER_GROUP = TransportFactory.newEventLoopGroup(serverConfig.getTransport(), serverConfig.getRemoteWorkerThreads());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                REMOTE_BOSS_GROUP.shutdownGracefully();
+                REMOTE_WORKER_GROUP.shutdownGracefully();
+            }));
+        }
+    }
+
+    public static EventLoopGroup getRemoteBossGroup() {
+        return Holder.REMOTE_BOSS_GROUP;
+    }
+
+    public static EventLoopGroup getRemoteWorkerGroup() {
+        return Holder.REMOTE_WORKER_GROUP;
+    }
+}
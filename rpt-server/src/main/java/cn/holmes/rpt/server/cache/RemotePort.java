@@ -0,0 +1,26 @@
+package cn.holmes.rpt.server.cache;
+
+import io.netty.channel.ChannelFuture;
+
+/**
+ * 端口穿透的外部端口,由首个注册的客户端绑定,最后一个客户端离开时关闭
+ */
+public class RemotePort {
+
+    private final ChannelFuture bindFuture;
+
+    private final MemberPool pool;
+
+    public RemotePort(ChannelFuture bindFuture, MemberPool pool) {
+        this.bindFuture = bindFuture;
+        this.pool = pool;
+    }
+
+    public ChannelFuture getBindFuture() {
+        return bindFuture;
+    }
+
+    public MemberPool getPool() {
+        return pool;
+    }
+}
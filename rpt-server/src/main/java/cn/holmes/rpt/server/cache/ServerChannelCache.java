@@ -9,18 +9,12 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ServerChannelCache {
 
     /**
-     * domain --> serverChannel 全局
+     * domain --> 客户端注册的穿透配置 全局
      */
-    private static final Map<String, Channel> SERVER_DOMAIN_CHANNEL_MAP = new ConcurrentHashMap<>();
+    private static final DomainTrie DOMAIN_TRIE = new DomainTrie();
 
-    private static final Map<String, String> SERVER_DOMAIN_TOKEN = new ConcurrentHashMap<>();
-
-    public static Map<String, Channel> getServerDomainChannelMap() {
-        return SERVER_DOMAIN_CHANNEL_MAP;
-    }
-
-    public static Map<String, String> getServerDomainToken() {
-        return SERVER_DOMAIN_TOKEN;
+    public static DomainTrie getDomainTrie() {
+        return DOMAIN_TRIE;
     }
 
     private static final Map<String, Channel> SERVER_CHANNEL_MAP = new ConcurrentHashMap<>();
@@ -29,10 +23,34 @@ public class ServerChannelCache {
         return SERVER_CHANNEL_MAP;
     }
 
-    public static void remove(List<String> domainList) {
+    /**
+     * port --> 端口穿透的外部端口 全局
+     */
+    private static final Map<Integer, RemotePort> REMOTE_PORT_MAP = new ConcurrentHashMap<>();
+
+    public static Map<Integer, RemotePort> getRemotePortMap() {
+        return REMOTE_PORT_MAP;
+    }
+
+    public static void remove(List<String> domainList, Channel serverChannel) {
         for (String domain : domainList) {
-            SERVER_DOMAIN_CHANNEL_MAP.remove(domain);
-            SERVER_DOMAIN_TOKEN.remove(domain);
+            DOMAIN_TRIE.unregister(domain, serverChannel);
+        }
+    }
+
+    /**
+     * 客户端离开端口的负载均衡,最后一个客户端离开时关闭端口
+     */
+    public static void removePorts(List<Integer> portList, Channel serverChannel) {
+        for (Integer port : portList) {
+            REMOTE_PORT_MAP.computeIfPresent(port, (key, remotePort) -> {
+                remotePort.getPool().remove(serverChannel);
+                if (!remotePort.getPool().isEmpty()) {
+                    return remotePort;
+                }
+                remotePort.getBindFuture().channel().close();
+                return null;
+            });
         }
     }
 }
@@ -1,7 +1,9 @@
 package cn.holmes.rpt.server.coder;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpRequestEncoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
 
 import java.util.List;
 
@@ -14,4 +16,14 @@ public class HttpEncoder {
         }
     }
 
+    /**
+     * 客户端返回的原始数据直接写出,只编码服务端自己的应答
+     */
+    public static class ResponseEncoder extends HttpResponseEncoder {
+        @Override
+        public boolean acceptOutboundMessage(Object msg) throws Exception {
+            return !(msg instanceof ByteBuf) && super.acceptOutboundMessage(msg);
+        }
+    }
+
 }
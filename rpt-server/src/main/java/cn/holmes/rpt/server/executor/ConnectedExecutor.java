@@ -2,14 +2,22 @@ package cn.holmes.rpt.server.executor;
 
 import cn.holmes.rpt.base.config.ProxyType;
 import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.SocketProfile;
 import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.EventLoopUtils;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.server.cache.ProxyToken;
 import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.ssl.SslHandler;
 
 import java.util.Collections;
 import java.util.Map;
@@ -40,13 +48,55 @@ public class ConnectedExecutor implements MessageExecutor {
         Map<String, Channel> localChannelMap = Optional.ofNullable(serverChannel.attr(Constants.CHANNELS).get()).orElse(Collections.emptyMap());
         String channelId = meta.getChannelId();
         Channel localChannel = localChannelMap.get(channelId);
+        if (message.getStreamId() != 0) {
+            // 多路复用: 外部连接已断开时通知客户端关闭内网连接
+            if (Objects.isNull(localChannel)) {
+                context.writeAndFlush(new Message(MessageType.TYPE_DISCONNECTED, meta, Unpooled.EMPTY_BUFFER).setStreamId(message.getStreamId()));
+                return;
+            }
+            bind(localChannel, context.channel(), proxyType);
+            return;
+        }
         if (Objects.isNull(localChannel)) {
             return;
         }
+        // 令牌校验通过后作废,未加密的代理连接没有客户端证书,只能凭令牌绑定外部连接
+        if (!ProxyToken.verify(localChannel, meta.getToken()) && Objects.isNull(context.pipeline().get(SslHandler.class))) {
+            logger.info("未加密的代理连接令牌校验失败,{}", context.channel().remoteAddress());
+            context.close();
+            return;
+        }
+        // 连接池中的代理连接按本次穿透的配置设置
+        SocketProfile socketProfile = SocketProfiles.of(remoteConfig, Config.getServerConfig().getSocketProfile());
+        SocketProfiles.apply(context.channel(), socketProfile);
+        SocketProfiles.record("proxy", socketProfile, context.channel());
         // binding each other
-        localChannel.attr(Constants.PROXY).set(context.channel());
         context.channel().attr(Constants.LOCAL).set(localChannel);
         context.channel().attr(Constants.Server.LABEL).set(Void.class);
-        localChannel.pipeline().fireUserEventTriggered(proxyType);
+        if (meta.isSplice()) {
+            // 客户端已切换为原始字节流
+            if (!SpliceUtils.isSupported(localChannel, context.channel())) {
+                localChannel.close();
+                context.close();
+                return;
+            }
+            SpliceUtils.detach(context.channel());
+        }
+        bind(localChannel, context.channel(), proxyType);
+    }
+
+    /**
+     * 外部连接迁移到代理连接所在的线程后开始转发
+     */
+    private void bind(Channel localChannel, Channel proxyChannel, ProxyType proxyType) {
+        long start = System.nanoTime();
+        EventLoopUtils.migrate(localChannel, proxyChannel.eventLoop(), () -> {
+            Optional.ofNullable(localChannel.attr(Constants.Server.METRICS).get()).ifPresent(metrics -> metrics.getBindLatency().record(System.nanoTime() - start));
+            localChannel.attr(Constants.PROXY).set(proxyChannel);
+            if (SpliceUtils.isSpliced(proxyChannel)) {
+                SpliceUtils.splice(localChannel, proxyChannel);
+            }
+            localChannel.pipeline().fireUserEventTriggered(proxyType);
+        });
     }
 }
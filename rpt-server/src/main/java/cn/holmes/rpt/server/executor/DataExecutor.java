@@ -4,9 +4,12 @@ import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.EventLoopUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.internal.EmptyArrays;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -19,9 +22,23 @@ public class DataExecutor implements MessageExecutor {
 
     @Override
     public void execute(ChannelHandlerContext context, Message message) throws Exception {
-        Channel localChannel = context.channel().attr(Constants.LOCAL).get();
-        if (Objects.nonNull(localChannel)) {
-            localChannel.writeAndFlush(Optional.ofNullable(message.getData()).orElse(EmptyArrays.EMPTY_BYTES));
+        Channel localChannel = StreamUtils.getLocalChannel(context.channel(), message.getStreamId());
+        if (Objects.isNull(localChannel)) {
+            return;
         }
+        ByteBuf data = message.getData();
+        if (Objects.isNull(data) || !data.isReadable()) {
+            EventLoopUtils.execute(localChannel, () -> localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER));
+            return;
+        }
+        int size = data.readableBytes();
+        Optional.ofNullable(localChannel.attr(Constants.Server.METRICS).get()).ifPresent(metrics -> metrics.sent(size));
+        // 消息在处理完成后释放,转发的内容需要增加引用;写出完成后归还发送方窗口
+        ByteBuf retained = data.retain();
+        EventLoopUtils.execute(localChannel, () -> localChannel.writeAndFlush(retained).addListener(future -> {
+            if (future.isSuccess()) {
+                StreamUtils.release(localChannel, context.channel(), message.getStreamId(), size);
+            }
+        }));
     }
 }
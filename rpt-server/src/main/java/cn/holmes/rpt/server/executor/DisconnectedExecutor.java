@@ -4,11 +4,13 @@ import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.EventLoopUtils;
 import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.internal.EmptyArrays;
+import io.netty.handler.ssl.SslHandler;
 
 import java.util.Collections;
 import java.util.Map;
@@ -24,17 +26,34 @@ public class DisconnectedExecutor implements MessageExecutor {
 
     @Override
     public void execute(ChannelHandlerContext context, Message message) throws Exception {
+        Channel localChannel = Objects.isNull(context.pipeline().get(SslHandler.class)) ? context.channel().attr(Constants.LOCAL).get() : find(message);
+        if (Objects.isNull(localChannel) || isStale(context.channel(), message, localChannel)) {
+            return;
+        }
+        EventLoopUtils.execute(localChannel, () -> localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE));
+    }
+
+    /**
+     * 按元数据查找外部连接,只用于经过客户端证书校验的连接;未加密的代理连接只能断开自己绑定的外部连接
+     */
+    private Channel find(Message message) {
         String serverId = message.getMeta().getServerId();
         Channel serverChannel = ServerChannelCache.getServerChannelMap().get(serverId);
         if (Objects.isNull(serverChannel)) {
-            return;
+            return null;
         }
         Map<String, Channel> localChannelMap = Optional.ofNullable(serverChannel.attr(Constants.CHANNELS).get()).orElse(Collections.emptyMap());
-        String channelId = message.getMeta().getChannelId();
-        Channel localChannel = localChannelMap.get(channelId);
-        if (Objects.isNull(localChannel)) {
-            return;
+        return localChannelMap.get(message.getMeta().getChannelId());
+    }
+
+    /**
+     * 按路径区分的HTTP请求会在同一外部连接上切换穿透连接,忽略已被替换的连接发来的断开通知
+     */
+    private boolean isStale(Channel channel, Message message, Channel localChannel) {
+        if (message.getStreamId() != 0) {
+            return !Objects.equals(localChannel.attr(Constants.STREAM_ID).get(), message.getStreamId());
         }
-        localChannel.writeAndFlush(EmptyArrays.EMPTY_BYTES).addListener(ChannelFutureListener.CLOSE);
+        Channel proxyChannel = localChannel.attr(Constants.PROXY).get();
+        return Objects.nonNull(proxyChannel) && proxyChannel != channel;
     }
 }
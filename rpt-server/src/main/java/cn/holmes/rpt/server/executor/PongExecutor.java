@@ -0,0 +1,33 @@
+package cn.holmes.rpt.server.executor;
+
+import cn.holmes.rpt.base.executor.MessageExecutor;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.protocol.ProbeState;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Objects;
+
+public class PongExecutor implements MessageExecutor {
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.TYPE_PONG;
+    }
+
+    @Override
+    public void execute(ChannelHandlerContext context, Message message) {
+        ProbeState probeState = context.channel().attr(Constants.Server.PROBE).get();
+        ByteBuf data = message.getData();
+        if (Objects.isNull(probeState) || Objects.isNull(data) || data.readableBytes() < 8) {
+            return;
+        }
+        boolean healthy = probeState.isHealthy();
+        probeState.receive(data.readLong());
+        if (!healthy) {
+            logger.info("客户端恢复应答探测,重新分配外部连接,{}", context.channel().attr(Constants.Server.CLIENT_KEY).get());
+        }
+    }
+}
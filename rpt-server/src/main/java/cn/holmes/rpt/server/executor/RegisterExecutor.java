@@ -1,6 +1,7 @@
 package cn.holmes.rpt.server.executor;
 
-import cn.holmes.rpt.base.coder.ByteArrayCodec;
+import cn.holmes.rpt.base.compress.api.CompressionFactory;
+import cn.holmes.rpt.base.compress.api.CompressionType;
 import cn.holmes.rpt.base.config.ProxyType;
 import cn.holmes.rpt.base.config.RemoteConfig;
 import cn.holmes.rpt.base.config.ServerToken;
@@ -8,19 +9,33 @@ import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.protocol.ProbeState;
+import cn.holmes.rpt.base.protocol.ProtocolVersion;
 import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
-import cn.holmes.rpt.base.utils.StringUtils;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import cn.holmes.rpt.base.utils.TransportFactory;
+import cn.holmes.rpt.server.cache.RemoteGroupCache;
+import cn.holmes.rpt.server.cache.DomainTrie;
+import cn.holmes.rpt.server.cache.Member;
+import cn.holmes.rpt.server.cache.MemberPool;
+import cn.holmes.rpt.server.cache.PathTrie;
+import cn.holmes.rpt.server.cache.RemotePort;
 import cn.holmes.rpt.server.cache.ServerChannelCache;
 import cn.holmes.rpt.server.handler.IpFilterRuleHandler;
 import cn.holmes.rpt.server.handler.RemoteHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ipfilter.RuleBasedIpFilter;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseCombiner;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.util.Collections;
 import java.util.List;
@@ -28,7 +43,10 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class RegisterExecutor implements MessageExecutor {
 
@@ -54,111 +72,194 @@ public class RegisterExecutor implements MessageExecutor {
             context.writeAndFlush(res).addListener(ChannelFutureListener.CLOSE);
             return;
         }
-        this.fillRemoteResult(context, meta);
+        // 协商协议版本,旧版本客户端未携带版本号时保持V1,AUTH发出后切换
+        meta.setVersion(Math.min(meta.getVersion(), ProtocolVersion.CURRENT.getCode()));
+        // 流编号、压缩标记只能由V2消息帧携带,不加密的代理连接不经过gzip,同样只用于V2
+        boolean upgraded = meta.getVersion() >= ProtocolVersion.V2.getCode();
+        // 协商双方均支持的压缩算法
+        List<CompressionType> compressionList = upgraded ? Optional.ofNullable(meta.getCompressionList()).orElse(Collections.emptyList()).stream().filter(CompressionFactory.getCompressionTypes()::contains).collect(Collectors.toList()) : Collections.emptyList();
+        context.channel().attr(Constants.COMPRESSIONS).set(compressionList);
+        meta.setCompressionList(compressionList);
+        // 告知客户端是否接受不加密的代理连接,由客户端决定代理连接是否加密
+        meta.setPlaintext(upgraded && Config.getServerConfig().isPlaintextProxy());
+        meta.setMultiplex(upgraded && meta.isMultiplex());
+        if (meta.isMultiplex()) {
+            // 多路复用: 外部连接通过控制连接上的逻辑流转发
+            context.channel().attr(Constants.STREAMS).set(new ConcurrentHashMap<>(1024));
+            context.channel().attr(Constants.Server.STREAM_SEQUENCE).set(new AtomicInteger());
+        }
+        // 外部连接在应答前不会被接收,提前初始化以免注册完成前的并发访问
+        context.channel().attr(Constants.CHANNELS).set(new ConcurrentHashMap<>(1024));
+        Promise<Void> promise = this.fillRemoteResult(context, meta);
+        // 端口绑定不阻塞当前线程,全部完成或超时后再应答
+        ScheduledFuture<?> timeout = context.executor().schedule(() -> promise.tryFailure(new TimeoutException()), Config.getServerConfig().getRegisterTimeout(), TimeUnit.SECONDS);
+        promise.addListener(future -> {
+            timeout.cancel(false);
+            if (future.cause() instanceof TimeoutException) {
+                logger.info("端口绑定超时,客户端使用的秘钥:{}", meta.getClientKey());
+                meta.setConnection(false).addRemoteResult("服务端绑定端口超时");
+            }
+            this.auth(context, meta);
+        });
+    }
+
+    private void auth(ChannelHandlerContext context, Meta meta) {
         Message res = new Message();
         res.setType(MessageType.TYPE_AUTH);
         res.setMeta(meta);
         ChannelFuture channelFuture = context.writeAndFlush(res);
         if (!meta.isConnection()) {
+            // 退出已加入的负载均衡,清理只有该客户端的端口和域名
+            Optional.ofNullable(context.channel().attr(Constants.Server.REMOTE_PORTS).getAndSet(null)).ifPresent(portList -> ServerChannelCache.removePorts(portList, context.channel()));
+            Optional.ofNullable(context.channel().attr(Constants.Server.DOMAIN).getAndSet(null)).ifPresent(domainList -> ServerChannelCache.remove(domainList, context.channel()));
             channelFuture.addListener(ChannelFutureListener.CLOSE);
             return;
         }
         logger.info("授权注册成功,客户端使用的秘钥:{}", meta.getClientKey());
+        SocketProfiles.record("control", SocketProfiles.of(Config.getServerConfig().getSocketProfile()), context.channel());
+        // 应答发出后开始分配外部连接
         ServerChannelCache.getServerChannelMap().put(context.channel().id().asLongText(), context.channel());
-        context.channel().attr(Constants.CHANNELS).set(new ConcurrentHashMap<>(1024));
+        Optional.ofNullable(context.channel().attr(Constants.Server.REMOTE_PORTS).get()).ifPresent(portList -> portList.stream().map(ServerChannelCache.getRemotePortMap()::get).filter(Objects::nonNull).forEach(remotePort -> remotePort.getBindFuture().channel().config().setAutoRead(true)));
+        if (meta.isProbe() && Config.getServerConfig().getProbeInterval() > 0) {
+            this.probe(context, meta);
+        }
+    }
+
+    /**
+     * 定时探测客户端,连续未应答时暂停分配外部连接,不必等到读空闲超时才发现失联
+     */
+    private void probe(ChannelHandlerContext context, Meta meta) {
+        ProbeState probeState = new ProbeState();
+        context.channel().attr(Constants.Server.PROBE).set(probeState);
+        int interval = Config.getServerConfig().getProbeInterval();
+        ScheduledFuture<?> future = context.executor().scheduleAtFixedRate(() -> {
+            boolean healthy = probeState.isHealthy();
+            long time = probeState.send(Config.getServerConfig().getProbeMisses());
+            if (healthy && !probeState.isHealthy()) {
+                logger.info("客户端连续{}次未应答探测,暂停分配外部连接,{}", probeState.getMisses(), meta.getClientKey());
+            }
+            context.writeAndFlush(new Message(MessageType.TYPE_PING, null, context.alloc().buffer(8).writeLong(time)));
+        }, interval, interval, TimeUnit.SECONDS);
+        context.channel().closeFuture().addListener(closeFuture -> future.cancel(false));
     }
 
-    private void fillRemoteResult(ChannelHandlerContext context, Meta meta) throws Exception {
+    private Promise<Void> fillRemoteResult(ChannelHandlerContext context, Meta meta) {
         meta.setConnection(true).setRemoteResult(new CopyOnWriteArrayList<>());
+        Promise<Void> promise = context.executor().newPromise();
+        PromiseCombiner promiseCombiner = new PromiseCombiner(context.executor());
         List<RemoteConfig> remoteConfigList = Optional.ofNullable(meta.getRemoteConfigList()).orElse(Collections.emptyList());
-        if (remoteConfigList.isEmpty()) {
-            return;
-        }
-        CountDownLatch countDownLatch = new CountDownLatch(remoteConfigList.size());
         for (RemoteConfig remoteConfig : remoteConfigList) {
             ProxyType proxyType = Optional.ofNullable(remoteConfig.getProxyType()).orElse(ProxyType.TCP);
             switch (proxyType) {
                 case TCP:
-                    // lazy
-                    if (Objects.isNull(context.channel().attr(Constants.Server.REMOTE_BOSS_GROUP).get()) && Objects.isNull(context.channel().attr(Constants.Server.REMOTE_WORKER_GROUP).get())) {
-                        context.channel().attr(Constants.Server.REMOTE_BOSS_GROUP).set(new NioEventLoopGroup());
-                        context.channel().attr(Constants.Server.REMOTE_WORKER_GROUP).set(new NioEventLoopGroup());
+                    if (Objects.isNull(context.channel().attr(Constants.Server.REMOTE_PORTS).get())) {
+                        context.channel().attr(Constants.Server.REMOTE_PORTS).set(new CopyOnWriteArrayList<>());
                     }
-                    registerTcp(context, meta, remoteConfig, countDownLatch);
+                    promiseCombiner.add(registerTcp(context, meta, remoteConfig, promise));
                     break;
                 case HTTP:
                     if (Objects.isNull(context.channel().attr(Constants.Server.DOMAIN).get())) {
                         context.channel().attr(Constants.Server.DOMAIN).set(new CopyOnWriteArrayList<>());
                     }
-                    registerHttp(context, meta, remoteConfig, countDownLatch);
+                    registerHttp(context, meta, remoteConfig);
                     break;
                 default:
             }
         }
-        countDownLatch.await();
+        promiseCombiner.finish(promise);
+        return promise;
     }
 
-    private void registerHttp(ChannelHandlerContext context, Meta meta, RemoteConfig remoteConfig, CountDownLatch countDownLatch) {
+    private void registerHttp(ChannelHandlerContext context, Meta meta, RemoteConfig remoteConfig) {
         if (Config.getServerConfig().getHttpPort() == 0 && Config.getServerConfig().getHttpsPort() == 0) {
             meta.setConnection(false).addRemoteResult("服务端未开启HTTP穿透功能");
-            countDownLatch.countDown();
             return;
         }
-        if (!StringUtils.hasText(remoteConfig.getDomain())) {
-            meta.setConnection(false).addRemoteResult(String.format("服务端绑定域名[%s]不合法", remoteConfig.getDomain()));
-            countDownLatch.countDown();
+        if (!DomainTrie.isValid(remoteConfig.getDomain()) || !PathTrie.isValid(remoteConfig.getPath())) {
+            meta.setConnection(false).addRemoteResult(String.format("服务端绑定域名[%s%s]不合法", remoteConfig.getDomain(), Optional.ofNullable(remoteConfig.getPath()).orElse("")));
             return;
         }
-        logger.info("服务端开始绑定域名[{}]", remoteConfig.getDomain());
-        ServerChannelCache.getServerDomainChannelMap().compute(remoteConfig.getDomain(), (domain, channel) -> {
-            if (channel != null) {
-                meta.setConnection(false).addRemoteResult(String.format("服务端绑定域名[%s]重复", domain));
-                return channel;
-            }
-            context.channel().attr(Constants.Server.DOMAIN).get().add(domain);
-            if (StringUtils.hasText(remoteConfig.getToken())) {
-                ServerChannelCache.getServerDomainToken().put(domain, remoteConfig.getToken());
-            }
-            meta.addRemoteResult(String.format("服务端绑定域名[%s]成功", domain));
-            return context.channel();
-        });
-        countDownLatch.countDown();
+        String route = remoteConfig.getDomain() + Optional.ofNullable(remoteConfig.getPath()).orElse("");
+        logger.info("服务端开始绑定域名[{}]", route);
+        int size = ServerChannelCache.getDomainTrie().register(new Member(context.channel(), remoteConfig));
+        if (size == 0) {
+            logger.info("服务端绑定域名[{}]重复,已被其他秘钥注册", route);
+            meta.setConnection(false).addRemoteResult(String.format("服务端绑定域名[%s]重复", route));
+            return;
+        }
+        context.channel().attr(Constants.Server.DOMAIN).get().add(remoteConfig.getDomain());
+        meta.addRemoteResult(size == 1 ? String.format("服务端绑定域名[%s]成功", route) : String.format("服务端绑定域名[%s]成功,当前共%s个客户端负载均衡", route, size));
     }
 
-    private void registerTcp(ChannelHandlerContext context, Meta meta, RemoteConfig remoteConfig, CountDownLatch countDownLatch) {
+    private Future<?> registerTcp(ChannelHandlerContext context, Meta meta, RemoteConfig remoteConfig, Promise<Void> promise) {
         if (remoteConfig.getRemotePort() == 0 || remoteConfig.getRemotePort() == Config.getServerConfig().getServerPort() || remoteConfig.getRemotePort() == Config.getServerConfig().getHttpPort() || remoteConfig.getRemotePort() == Config.getServerConfig().getHttpsPort()) {
             meta.setConnection(false).addRemoteResult(String.format("需要绑定的端口[%s]不合法", remoteConfig.getRemotePort()));
-            countDownLatch.countDown();
-            return;
+            return context.executor().newSucceededFuture(null);
         }
         ServerToken serverToken = Config.getServerConfig().getServerToken(meta.getClientKey());
         if (!serverToken.authorize(remoteConfig.getRemotePort())) {
             meta.setConnection(false).addRemoteResult(String.format("需要绑定的端口[%s]范围不合法", remoteConfig.getRemotePort()));
-            countDownLatch.countDown();
-            return;
+            return context.executor().newSucceededFuture(null);
         }
+        // 端口已被同一秘钥的其他客户端绑定时加入其负载均衡,同一端口的注册串行处理
+        Member member = new Member(context.channel(), remoteConfig);
+        int[] size = new int[1];
+        RemotePort remotePort = ServerChannelCache.getRemotePortMap().compute(remoteConfig.getRemotePort(), (port, current) -> {
+            RemotePort target = Optional.ofNullable(current).orElseGet(() -> bind(context, member.getClientKey(), remoteConfig));
+            size[0] = target.getPool().accept(member) ? target.getPool().add(member) : 0;
+            return target;
+        });
+        if (size[0] == 0) {
+            meta.setConnection(false).addRemoteResult(String.format("服务端绑定端口[%s]失败,端口已被绑定", remoteConfig.getRemotePort()));
+            return context.executor().newSucceededFuture(null);
+        }
+        context.channel().attr(Constants.Server.REMOTE_PORTS).get().add(remoteConfig.getRemotePort());
+        ChannelFuture bindFuture = remotePort.getBindFuture();
+        bindFuture.addListener((ChannelFutureListener) channelFuture -> {
+            if (!channelFuture.isSuccess()) {
+                // 绑定失败的端口不再保留,之后的注册重新绑定,不会加入未绑定成功的端口
+                ServerChannelCache.getRemotePortMap().remove(remoteConfig.getRemotePort(), remotePort);
+            }
+        });
+        // 绑定结果在控制连接所在的线程上处理,与应答串行
+        bindFuture.addListener((ChannelFutureListener) channelFuture -> context.executor().execute(() -> {
+            // 已超时的注册由应答时统一清理
+            if (promise.isDone()) {
+                return;
+            }
+            if (!channelFuture.isSuccess()) {
+                logger.info("服务端失败建立本地端口绑定[{}], {}", remoteConfig.getRemotePort(), channelFuture.cause().getMessage());
+                meta.setConnection(false).addRemoteResult(String.format("服务端绑定端口[%s]失败,原因:%s", remoteConfig.getRemotePort(), channelFuture.cause().getMessage()));
+                return;
+            }
+            meta.addRemoteResult(size[0] == 1 ? String.format("服务端绑定端口[%s]成功", remoteConfig.getRemotePort()) : String.format("服务端绑定端口[%s]成功,当前共%s个客户端负载均衡", remoteConfig.getRemotePort(), size[0]));
+        }));
+        return bindFuture;
+    }
+
+    private RemotePort bind(ChannelHandlerContext context, String clientKey, RemoteConfig remoteConfig) {
+        MemberPool pool = new MemberPool(clientKey, remoteConfig);
         ServerBootstrap remoteBootstrap = new ServerBootstrap();
-        remoteBootstrap.group(context.channel().attr(Constants.Server.REMOTE_BOSS_GROUP).get(), context.channel().attr(Constants.Server.REMOTE_WORKER_GROUP).get()).channel(NioServerSocketChannel.class).childOption(ChannelOption.SO_KEEPALIVE, true).childHandler(new ChannelInitializer<SocketChannel>() {
+        // 注册应答发出前不接收外部连接
+        remoteBootstrap.group(RemoteGroupCache.getRemoteBossGroup(), RemoteGroupCache.getRemoteWorkerGroup()).channel(TransportFactory.serverSocketChannel(RemoteGroupCache.getRemoteBossGroup())).option(ChannelOption.AUTO_READ, false).childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel channel) throws Exception {
                 if (Config.getServerConfig().ipFilter()) {
                     channel.pipeline().addLast(ruleBasedIpFilter);
                 }
-                channel.pipeline().addLast(new ByteArrayCodec());
+                if (Config.getServerConfig().getFlushConsolidation() > 0) {
+                    channel.pipeline().addLast(new FlushConsolidationHandler(Config.getServerConfig().getFlushConsolidation(), true));
+                }
                 channel.pipeline().addLast(new ChunkedWriteHandler());
-                channel.pipeline().addLast(new RemoteHandler(context.channel(), remoteConfig));
+                channel.pipeline().addLast(new RemoteHandler(pool));
             }
         });
+        SocketProfiles.apply(remoteBootstrap, pool.getSocketProfile());
+        if (Config.getServerConfig().isSplice()) {
+            SpliceUtils.levelTriggered(remoteBootstrap);
+        }
 
         logger.info("服务端开始建立本地端口绑定[{}]", remoteConfig.getRemotePort());
-        remoteBootstrap.bind(Config.getServerConfig().getServerIp(), remoteConfig.getRemotePort()).addListener((ChannelFutureListener) channelFuture -> {
-            if (channelFuture.isSuccess()) {
-                meta.addRemoteResult(String.format("服务端绑定端口[%s]成功", remoteConfig.getRemotePort()));
-            } else {
-                logger.info("服务端失败建立本地端口绑定[{}], {}", remoteConfig.getRemotePort(), channelFuture.cause().getMessage());
-                meta.setConnection(false).addRemoteResult(String.format("服务端绑定端口[%s]失败,原因:%s", remoteConfig.getRemotePort(), channelFuture.cause().getMessage()));
-            }
-            countDownLatch.countDown();
-        });
+        return new RemotePort(remoteBootstrap.bind(Config.getServerConfig().getServerIp(), remoteConfig.getRemotePort()), pool);
     }
 }
@@ -0,0 +1,99 @@
+package cn.holmes.rpt.server.handler;
+
+import cn.holmes.rpt.base.config.StickyType;
+import cn.holmes.rpt.base.utils.StringUtils;
+import cn.holmes.rpt.server.cache.DomainRoute;
+import cn.holmes.rpt.server.cache.PathTrie;
+import cn.holmes.rpt.server.cache.ServerChannelCache;
+import cn.holmes.rpt.server.coder.HttpEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ByteProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 只读取到Host请求头为止,不解析HTTP请求
+ * <p>
+ * 域名已注册、无需授权、未按路径区分且未按Cookie保持会话时,连同已读取的字节按原始数据转发;
+ * 否则交给HTTP编解码器,由{@link RequestHandler}完整处理
+ */
+public class HostSniffHandler extends ByteToMessageDecoder {
+
+    /**
+     * 与HttpObjectDecoder默认的请求头长度上限一致
+     */
+    private static final int MAX_HEADER_SIZE = 8192;
+
+    private static final byte[] HOST = "host:".getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        // 不移动读索引,移除当前处理器时已读取的字节全部交给下一个处理器
+        int index = in.readerIndex();
+        int end = in.writerIndex();
+        while (index < end) {
+            int lineEnd = in.forEachByte(index, end - index, ByteProcessor.FIND_LF);
+            if (lineEnd < 0) {
+                break;
+            }
+            int length = lineEnd - index;
+            if (length > 0 && in.getByte(lineEnd - 1) == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                // 请求头结束,未携带Host
+                fallback(ctx);
+                return;
+            }
+            if (isHost(in, index, length)) {
+                route(ctx, in.toString(index + HOST.length, length - HOST.length, StandardCharsets.US_ASCII).trim());
+                return;
+            }
+            index = lineEnd + 1;
+        }
+        if (in.readableBytes() > MAX_HEADER_SIZE) {
+            fallback(ctx);
+        }
+    }
+
+    private boolean isHost(ByteBuf in, int index, int length) {
+        if (length < HOST.length) {
+            return false;
+        }
+        for (int i = 0; i < HOST.length; i++) {
+            if ((in.getByte(index + i) | 0x20) != HOST[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void route(ChannelHandlerContext ctx, String host) {
+        // 按路径区分或按Cookie保持会话的域名需要解析每个请求
+        PathTrie pathTrie = ServerChannelCache.getDomainTrie().match(host);
+        DomainRoute route = pathTrie == null ? null : pathTrie.single();
+        if (route == null || StringUtils.hasText(route.getToken()) || StickyType.COOKIE == route.getPool().getSticky() || !route.getPool().isAvailable()) {
+            fallback(ctx);
+            return;
+        }
+        ctx.pipeline().replace(this, null, new RequestHandler(pathTrie));
+    }
+
+    /**
+     * 需要服务端应答或授权的请求按完整的HTTP请求处理
+     */
+    private void fallback(ChannelHandlerContext ctx) {
+        ctx.pipeline().addAfter(ctx.name(), null, new RequestHandler());
+        ctx.pipeline().addAfter(ctx.name(), null, new ChunkedWriteHandler());
+        ctx.pipeline().addAfter(ctx.name(), null, new HttpServerExpectContinueHandler());
+        ctx.pipeline().addAfter(ctx.name(), null, new HttpEncoder.ResponseEncoder());
+        ctx.pipeline().addAfter(ctx.name(), null, new HttpRequestDecoder());
+        ctx.pipeline().remove(this);
+    }
+}
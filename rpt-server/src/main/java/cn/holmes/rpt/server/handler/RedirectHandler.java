@@ -2,13 +2,17 @@ package cn.holmes.rpt.server.handler;
 
 import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.server.page.StaticDispatcher;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
 
-public class RedirectHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+/**
+ * 只根据请求头重定向,请求体直接丢弃;统计路径直接应答
+ */
+public class RedirectHandler extends SimpleChannelInboundHandler<HttpObject> {
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
@@ -16,7 +20,16 @@ public class RedirectHandler extends SimpleChannelInboundHandler<FullHttpRequest
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, HttpObject httpObject) throws Exception {
+        if (!(httpObject instanceof HttpRequest)) {
+            return;
+        }
+        HttpRequest msg = (HttpRequest) httpObject;
+        if (StaticDispatcher.isMetrics(msg.uri())) {
+            // 统计路径不跳转,便于采集端直接访问HTTP端口
+            StaticDispatcher.dispatch(msg, ctx);
+            return;
+        }
         FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.MOVED_PERMANENTLY);
         HttpHeaders headers = response.headers();
         headers.set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
@@ -1,39 +1,52 @@
 package cn.holmes.rpt.server.handler;
 
+import cn.holmes.rpt.base.compress.StreamCompressor;
 import cn.holmes.rpt.base.config.ProxyType;
 import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.metrics.TunnelMetrics;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.EventLoopUtils;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SpliceUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
+import cn.holmes.rpt.server.cache.Member;
+import cn.holmes.rpt.server.cache.MemberPool;
+import cn.holmes.rpt.server.cache.ProxyToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.internal.EmptyArrays;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
 /**
  * 处理服务器接收到的外部请求
  */
-public class RemoteHandler extends SimpleChannelInboundHandler<byte[]> {
+public class RemoteHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
-    private final Channel channel;
-    private final RemoteConfig remoteConfig;
+    private final MemberPool pool;
 
-    public RemoteHandler(Channel channel, RemoteConfig remoteConfig) {
-        this.channel = channel;
-        this.remoteConfig = remoteConfig;
-    }
+    /**
+     * 建立连接时从负载均衡中选出的客户端
+     */
+    private Member member;
+    private Channel channel;
+    private RemoteConfig remoteConfig;
+    private long connectTime;
+    private TunnelMetrics metrics;
+    /**
+     * 穿透连接是否已建立
+     */
+    private boolean bound;
 
-    @Override
-    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
-        Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
-        if (Objects.nonNull(proxyChannel)) {
-            proxyChannel.config().setAutoRead(ctx.channel().isWritable());
-        }
-        super.channelWritabilityChanged(ctx);
+    public RemoteHandler(MemberPool pool) {
+        this.pool = pool;
     }
 
     @Override
@@ -42,6 +55,14 @@ public class RemoteHandler extends SimpleChannelInboundHandler<byte[]> {
             ctx.fireUserEventTriggered(evt);
             return;
         }
+        long nanos = System.nanoTime() - connectTime;
+        member.record(nanos);
+        metrics.getConnectLatency().record(nanos);
+        bound = true;
+        if (SpliceUtils.isSpliced(ctx.channel().attr(Constants.PROXY).get())) {
+            // 内核转发开始后再读取
+            return;
+        }
         ctx.channel().config().setAutoRead(true);
     }
 
@@ -50,20 +71,57 @@ public class RemoteHandler extends SimpleChannelInboundHandler<byte[]> {
      */
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        channel.attr(Constants.CHANNELS).get().put(ctx.channel().id().asLongText(), ctx.channel());
+        Member selected = pool.select(ctx.channel());
+        Map<String, Channel> channelMap = selected == null ? null : selected.getChannel().attr(Constants.CHANNELS).get();
+        if (Objects.isNull(channelMap)) {
+            ctx.close();
+            return;
+        }
+        member = selected;
+        member.acquire();
+        channel = member.getChannel();
+        remoteConfig = member.getConfig();
+        connectTime = System.nanoTime();
+        metrics = TunnelMetrics.of(channel.attr(Constants.Server.CLIENT_KEY).get(), ProxyType.TCP, String.valueOf(remoteConfig.getRemotePort()));
+        metrics.open();
+        ctx.channel().attr(Constants.Server.METRICS).set(metrics);
+        SocketProfiles.record("external", pool.getSocketProfile(), ctx.channel());
+        channelMap.put(ctx.channel().id().asLongText(), ctx.channel());
         ctx.channel().config().setAutoRead(false);
-        send(channel, MessageType.TYPE_CONNECTED, EmptyArrays.EMPTY_BYTES, ctx);
+        ctx.channel().attr(Constants.WINDOW).set(StreamUtils.newWindow(channel));
+        ctx.channel().attr(Constants.COMPRESSOR).set(StreamCompressor.create(remoteConfig.getCompression(), channel.attr(Constants.COMPRESSIONS).get()));
+        if (StreamUtils.isMultiplex(channel)) {
+            int streamId = StreamUtils.nextStreamId(channel.attr(Constants.Server.STREAM_SEQUENCE).get());
+            ctx.channel().attr(Constants.STREAM_ID).set(streamId);
+            channel.attr(Constants.STREAMS).get().put(streamId, ctx.channel());
+            // 外部连接迁移到所选客户端控制连接所在的线程,流上的读写与控制连接在同一线程
+            EventLoopUtils.migrate(ctx.channel(), channel.eventLoop(), () -> {
+                if (ctx.channel().isActive()) {
+                    send(channel, MessageType.TYPE_CONNECTED, Unpooled.EMPTY_BUFFER, ctx);
+                }
+            });
+            return;
+        }
+        send(channel, MessageType.TYPE_CONNECTED, Unpooled.EMPTY_BUFFER, ctx);
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, byte[] bytes) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) throws Exception {
         // 从外部连接接收到的数据 转发到客户端
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
         if (Objects.isNull(proxyChannel)) {
             ctx.close();
             return;
         }
-        send(proxyChannel, MessageType.TYPE_DATA, bytes, ctx);
+        metrics.received(buf.readableBytes());
+        if (SpliceUtils.isSpliced(proxyChannel)) {
+            // 内核转发开始前读取到的数据按原始字节写出,与之后的转发共用代理连接的写出队列,顺序不变
+            proxyChannel.writeAndFlush(buf.retain());
+            return;
+        }
+        int size = buf.readableBytes();
+        send(proxyChannel, MessageType.TYPE_DATA, buf.retain(), ctx);
+        StreamUtils.consume(ctx.channel(), proxyChannel, size);
     }
 
     /**
@@ -71,12 +129,28 @@ public class RemoteHandler extends SimpleChannelInboundHandler<byte[]> {
      */
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (Objects.isNull(member)) {
+            return;
+        }
+        member.release();
+        metrics.close(bound);
         Optional.ofNullable(channel.attr(Constants.CHANNELS).get()).ifPresent(channelMap -> channelMap.remove(ctx.channel().id().asLongText()));
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).getAndSet(null);
+        if (StreamUtils.isMultiplex(channel)) {
+            // 流可能尚未建立完成,直接通过控制连接通知客户端
+            Optional.ofNullable(channel.attr(Constants.STREAMS).get()).ifPresent(streamMap -> streamMap.remove(StreamUtils.getStreamId(ctx.channel())));
+            if (channel.isActive()) {
+                send(channel, MessageType.TYPE_DISCONNECTED, Unpooled.EMPTY_BUFFER, ctx);
+            }
+            return;
+        }
         if (Objects.nonNull(proxyChannel) && proxyChannel.isActive()) {
             proxyChannel.attr(Constants.LOCAL).set(null);
-            proxyChannel.config().setAutoRead(true);
-            send(proxyChannel, MessageType.TYPE_DISCONNECTED, EmptyArrays.EMPTY_BYTES, ctx);
+            if (SpliceUtils.isSpliced(proxyChannel)) {
+                proxyChannel.close();
+                return;
+            }
+            send(proxyChannel, MessageType.TYPE_DISCONNECTED, Unpooled.EMPTY_BUFFER, ctx);
         }
     }
 
@@ -88,15 +162,31 @@ public class RemoteHandler extends SimpleChannelInboundHandler<byte[]> {
         ctx.close();
     }
 
+    /**
+     * 独立代理连接上不压缩的TCP穿透可由内核转发,代理连接是否加密由客户端判断
+     */
+    private boolean isSplice(ChannelHandlerContext ctx) {
+        return ProxyType.TCP == Optional.ofNullable(remoteConfig.getProxyType()).orElse(ProxyType.TCP) && !StreamUtils.isMultiplex(channel)
+                && Objects.isNull(ctx.channel().attr(Constants.COMPRESSOR).get()) && SpliceUtils.isSupported(ctx.channel());
+    }
+
     /**
      * 发送数据到内网客户端流程封装
      **/
-    public void send(Channel complex, MessageType type, byte[] data, ChannelHandlerContext ctx) {
-        Meta meta = new Meta(ctx.channel().id().asLongText(), remoteConfig).setServerId(channel.id().asLongText());
+    public void send(Channel complex, MessageType type, ByteBuf data, ChannelHandlerContext ctx) {
         Message message = new Message();
         message.setType(type);
-        message.setMeta(meta);
+        message.setStreamId(StreamUtils.getStreamId(ctx.channel()));
+        if (type.hasMeta()) {
+            // 数据消息依赖代理连接上已绑定的外部连接,无需元数据
+            Meta meta = new Meta(ctx.channel().id().asLongText(), remoteConfig).setServerId(channel.id().asLongText()).setSplice(isSplice(ctx));
+            if (MessageType.TYPE_CONNECTED == type) {
+                meta.setToken(ProxyToken.issue(ctx.channel(), channel));
+            }
+            message.setMeta(meta);
+        }
         message.setData(data);
+        Optional.ofNullable(ctx.channel().attr(Constants.COMPRESSOR).get()).ifPresent(compressor -> compressor.compress(ctx.alloc(), message));
         complex.writeAndFlush(message);
     }
 }
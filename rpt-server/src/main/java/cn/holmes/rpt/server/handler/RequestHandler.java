@@ -1,45 +1,100 @@
 package cn.holmes.rpt.server.handler;
 
-import cn.holmes.rpt.base.coder.ByteArrayCodec;
+import cn.holmes.rpt.base.compress.StreamCompressor;
 import cn.holmes.rpt.base.config.ProxyType;
 import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.SocketProfile;
+import cn.holmes.rpt.base.config.StickyType;
+import cn.holmes.rpt.base.metrics.TunnelMetrics;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.protocol.MessageType;
 import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.StreamUtils;
 import cn.holmes.rpt.base.utils.StringUtils;
 import cn.holmes.rpt.server.page.StaticDispatcher;
+import cn.holmes.rpt.server.cache.DomainRoute;
+import cn.holmes.rpt.server.cache.Member;
+import cn.holmes.rpt.server.cache.PathTrie;
+import cn.holmes.rpt.server.cache.ProxyToken;
 import cn.holmes.rpt.server.cache.ServerChannelCache;
 import cn.holmes.rpt.server.coder.HttpEncoder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.util.ReferenceCountUtil;
-import io.netty.util.internal.EmptyArrays;
 
 import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+/**
+ * 请求头和请求体分块到达即转发,不在服务端聚合
+ * <p>
+ * 首个穿透请求的请求体转发完毕后移除HTTP解码器,之后的字节按原始数据转发;
+ * 域名按路径区分时保留解码器,每个请求单独选择内网服务,与上一个请求不同时重新建立穿透连接;
+ * 同一域名有多个客户端时按负载均衡选择,同一连接上的后续请求优先沿用已选出的客户端;
+ * 由{@link HostSniffHandler}确定域名时不经过HTTP编解码,直接转发原始数据
+ */
+public class RequestHandler extends SimpleChannelInboundHandler<HttpObject> {
 
-    private final Queue<FullHttpRequest> requestMessage = new LinkedBlockingQueue<>();
+    private final Queue<Object> requestMessage = new LinkedBlockingQueue<>();
 
     private final AtomicBoolean connected = new AtomicBoolean(false);
 
     private final HttpEncoder.RequestEncoder requestEncoder = new HttpEncoder.RequestEncoder();
 
-    private String domain;
+    private DomainRoute route;
+
+    /**
+     * 从负载均衡中选出的客户端,同一连接上的后续请求优先沿用
+     */
+    private Member member;
+
+    private long connectTime;
+
+    private TunnelMetrics metrics;
+
+    /**
+     * 域名是否按路径区分
+     */
+    private boolean perRequest;
+
+    private boolean connecting;
+
+    /**
+     * 当前请求由服务端直接应答,丢弃其请求体
+     */
+    private boolean discarding;
+
+    public RequestHandler() {
+    }
+
+    /**
+     * 已确定域名且未按路径区分,连接建立后直接转发原始数据
+     */
+    public RequestHandler(PathTrie pathTrie) {
+        this.route = pathTrie.single();
+    }
 
     @Override
-    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
-        Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
-        if (Objects.nonNull(proxyChannel)) {
-            proxyChannel.config().setAutoRead(ctx.channel().isWritable());
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (route == null) {
+            return;
         }
-        super.channelWritabilityChanged(ctx);
+        member = route.getPool().select(ctx.channel());
+        if (member == null) {
+            ctx.close();
+            return;
+        }
+        connect(ctx);
     }
 
     @Override
@@ -53,23 +108,40 @@ public class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest>
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         ctx.channel().config().setAutoRead(true);
-        FullHttpRequest request;
+        Object request;
         while ((request = requestMessage.poll()) != null) {
             ReferenceCountUtil.release(request);
         }
-        if (domain == null) {
-            return;
-        }
-        Channel serverChannel = ServerChannelCache.getServerDomainChannelMap().get(domain);
-        if (serverChannel == null) {
+        if (member == null) {
             return;
         }
+        disconnect(ctx);
+    }
+
+    /**
+     * 断开当前的穿透连接并通知客户端
+     */
+    private void disconnect(ChannelHandlerContext ctx) {
+        Channel serverChannel = member.getChannel();
+        member.release();
+        metrics.close(connected.get());
         Optional.ofNullable(serverChannel.attr(Constants.CHANNELS).get()).ifPresent(channelMap -> channelMap.remove(ctx.channel().id().asLongText()));
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).getAndSet(null);
+        connected.set(false);
+        connecting = false;
+        Integer streamId = ctx.channel().attr(Constants.STREAM_ID).get();
+        if (Objects.nonNull(streamId)) {
+            // 流可能尚未建立完成,直接通过控制连接通知客户端
+            Optional.ofNullable(serverChannel.attr(Constants.STREAMS).get()).ifPresent(streamMap -> streamMap.remove(streamId));
+            if (serverChannel.isActive()) {
+                send(serverChannel, ctx, MessageType.TYPE_DISCONNECTED, Unpooled.EMPTY_BUFFER);
+            }
+            ctx.channel().attr(Constants.STREAM_ID).set(null);
+            return;
+        }
         if (Objects.nonNull(proxyChannel) && proxyChannel.isActive()) {
             proxyChannel.attr(Constants.LOCAL).set(null);
-            proxyChannel.config().setAutoRead(true);
-            send(proxyChannel, ctx, domain, MessageType.TYPE_DISCONNECTED, EmptyArrays.EMPTY_BYTES);
+            send(proxyChannel, ctx, MessageType.TYPE_DISCONNECTED, Unpooled.EMPTY_BUFFER);
         }
     }
 
@@ -80,11 +152,17 @@ public class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest>
             return;
         }
         Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
-        ctx.pipeline().replace(HttpServerCodec.class, ByteArrayCodec.class.getName(), new ByteArrayCodec());
+        long nanos = System.nanoTime() - connectTime;
+        member.record(nanos);
+        metrics.getConnectLatency().record(nanos);
         connected.set(true);
+        // 响应由客户端原样返回,按路径区分时保留编码器用于服务端自己的应答
+        if (!perRequest && Objects.nonNull(ctx.pipeline().get(HttpResponseEncoder.class))) {
+            ctx.pipeline().remove(HttpResponseEncoder.class);
+        }
         if (!requestMessage.isEmpty()) {
             synchronized (connected) {
-                FullHttpRequest request;
+                Object request;
                 while ((request = requestMessage.poll()) != null) {
                     handle(proxyChannel, ctx, request);
                     ReferenceCountUtil.release(request);
@@ -96,51 +174,47 @@ public class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest>
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (msg instanceof FullHttpRequest) {
+        if (msg instanceof HttpObject) {
             super.channelRead(ctx, msg);
             return;
         }
-        if (msg instanceof byte[]) {
-            byte[] message = (byte[]) msg;
+        if (msg instanceof ByteBuf) {
+            ByteBuf message = (ByteBuf) msg;
+            if (!connected.get()) {
+                synchronized (connected) {
+                    if (!connected.get()) {
+                        requestMessage.offer(message);
+                        return;
+                    }
+                }
+            }
             Channel proxyChannel = ctx.channel().attr(Constants.PROXY).get();
             if (Objects.isNull(proxyChannel)) {
+                message.release();
                 ctx.close();
                 return;
             }
-            send(proxyChannel, ctx, domain, MessageType.TYPE_DATA, message);
+            int size = message.readableBytes();
+            metrics.received(size);
+            send(proxyChannel, ctx, MessageType.TYPE_DATA, message);
+            StreamUtils.consume(ctx.channel(), proxyChannel, size);
             return;
         }
         ctx.fireChannelRead(msg);
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) throws Exception {
-
-        domain = Optional.ofNullable(domain).orElse(Constants.COLON.split(fullHttpRequest.headers().get(HttpHeaderNames.HOST))[0]);
-        if (!StringUtils.hasText(domain)) {
-            StaticDispatcher.dispatch(fullHttpRequest, ctx);
-            return;
+    protected void channelRead0(ChannelHandlerContext ctx, HttpObject httpObject) throws Exception {
+        if (httpObject instanceof HttpRequest) {
+            discarding = !route(ctx, (HttpRequest) httpObject);
         }
-        Channel serverChannel = ServerChannelCache.getServerDomainChannelMap().get(domain);
-        if (serverChannel == null || !serverChannel.isOpen()) {
-            StaticDispatcher.dispatch(fullHttpRequest, ctx);
-            return;
-        }
-
-        String token = ServerChannelCache.getServerDomainToken().get(domain);
-        if (token != null && !StaticDispatcher.authorize(ctx, fullHttpRequest, token)) {
+        if (discarding) {
             return;
         }
-
-        if (!connected.get()) {
-            ctx.channel().config().setAutoRead(false);
-            serverChannel.attr(Constants.CHANNELS).get().put(ctx.channel().id().asLongText(), ctx.channel());
-            send(serverChannel, ctx, domain, MessageType.TYPE_CONNECTED, EmptyArrays.EMPTY_BYTES);
-        }
         if (!connected.get()) {
             synchronized (connected) {
                 if (!connected.get()) {
-                    requestMessage.offer(fullHttpRequest.retain());
+                    requestMessage.offer(ReferenceCountUtil.retain(httpObject));
                     return;
                 }
             }
@@ -150,33 +224,159 @@ public class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest>
             ctx.close();
             return;
         }
-        handle(proxyChannel, ctx, fullHttpRequest);
+        handle(proxyChannel, ctx, httpObject);
     }
 
-    private void handle(Channel proxyChannel, ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) throws Exception {
-        List<Object> encode = new ArrayList<>();
-        requestEncoder.encode(ctx, fullHttpRequest, encode);
-        for (Object obj : encode) {
-            ByteBuf buf = (ByteBuf) obj;
-            byte[] data = new byte[buf.readableBytes()];
-            buf.readBytes(data);
-            buf.release();
-            send(proxyChannel, ctx, domain, MessageType.TYPE_DATA, data);
+    /**
+     * 找到域名对应的客户端并建立连接
+     *
+     * @return 请求是否需要转发,服务端直接应答时返回false
+     */
+    private boolean route(ChannelHandlerContext ctx, HttpRequest httpRequest) {
+        PathTrie pathTrie = ServerChannelCache.getDomainTrie().match(httpRequest.headers().get(HttpHeaderNames.HOST));
+        DomainRoute next = pathTrie == null ? null : pathTrie.match(httpRequest.uri());
+        if (next == null || !next.getPool().isAvailable()) {
+            StaticDispatcher.dispatch(httpRequest, ctx);
+            return false;
+        }
+
+        String token = next.getToken();
+        if (StringUtils.hasText(token) && !StaticDispatcher.authorize(ctx, httpRequest, token)) {
+            return false;
+        }
+
+        perRequest = pathTrie.single() == null;
+        // 连接建立前的流水线请求沿用当前的穿透连接
+        if (connecting && !connected.get()) {
+            return true;
+        }
+        boolean sticky = StickyType.COOKIE == next.getPool().getSticky();
+        String id = sticky ? cookie(httpRequest) : null;
+        Member selected = Optional.ofNullable(id).map(next.getPool()::get).orElse(null);
+        if (selected == null && route == next && member != null && member.isReady()) {
+            selected = member;
+        }
+        if (selected == null) {
+            // 按Cookie保持会话时首次访问按均衡策略选择
+            selected = sticky ? next.getPool().select((String) null) : next.getPool().select(ctx.channel());
+        }
+        if (selected == null) {
+            StaticDispatcher.dispatch(httpRequest, ctx);
+            return false;
+        }
+        if (selected == member && connected.get()) {
+            return true;
+        }
+        if (connected.get()) {
+            disconnect(ctx);
+        }
+        route = next;
+        member = selected;
+        if (sticky) {
+            StickyCookieHandler cookieHandler = ctx.pipeline().get(StickyCookieHandler.class);
+            if (cookieHandler == null) {
+                cookieHandler = new StickyCookieHandler();
+                ctx.pipeline().addLast(cookieHandler);
+            }
+            // 请求已携带当前客户端的Cookie时无需再写入
+            cookieHandler.stick(Objects.equals(id, selected.getId()) ? null : selected.getId());
+        }
+        connect(ctx);
+        return true;
+    }
+
+    private String cookie(HttpRequest httpRequest) {
+        String header = httpRequest.headers().get(HttpHeaderNames.COOKIE);
+        if (header == null) {
+            return null;
+        }
+        for (Cookie cookie : ServerCookieDecoder.LAX.decode(header)) {
+            if (StickyCookieHandler.COOKIE_NAME.equals(cookie.name())) {
+                return cookie.value();
+            }
         }
+        return null;
     }
 
-    private void send(Channel complex, ChannelHandlerContext ctx, String domain, MessageType typeConnect, byte[] data) {
-        RemoteConfig remoteConfig = new RemoteConfig();
-        remoteConfig.setProxyType(ProxyType.HTTP);
-        remoteConfig.setDomain(domain);
+    private void connect(ChannelHandlerContext ctx) {
+        if (connecting) {
+            return;
+        }
+        Channel serverChannel = member.getChannel();
+        Map<String, Channel> channelMap = serverChannel.attr(Constants.CHANNELS).get();
+        if (Objects.isNull(channelMap)) {
+            member = null;
+            ctx.close();
+            return;
+        }
+        connecting = true;
+        member.acquire();
+        connectTime = System.nanoTime();
+        RemoteConfig remoteConfig = member.getConfig();
+        metrics = TunnelMetrics.of(serverChannel.attr(Constants.Server.CLIENT_KEY).get(), ProxyType.HTTP, remoteConfig.getDomain() + Optional.ofNullable(remoteConfig.getPath()).orElse(""));
+        metrics.open();
+        ctx.channel().attr(Constants.Server.METRICS).set(metrics);
+        SocketProfile socketProfile = SocketProfiles.of(remoteConfig, Config.getServerConfig().getSocketProfile());
+        SocketProfiles.apply(ctx.channel(), socketProfile);
+        SocketProfiles.record("external", socketProfile, ctx.channel());
+        // 连接建立前暂停读取,请求体留在接收缓冲区中
+        ctx.channel().config().setAutoRead(false);
+        channelMap.put(ctx.channel().id().asLongText(), ctx.channel());
+        ctx.channel().attr(Constants.WINDOW).set(StreamUtils.newWindow(serverChannel));
+        ctx.channel().attr(Constants.COMPRESSOR).set(StreamCompressor.create(remoteConfig.getCompression(), serverChannel.attr(Constants.COMPRESSIONS).get()));
+        if (StreamUtils.isMultiplex(serverChannel)) {
+            int streamId = StreamUtils.nextStreamId(serverChannel.attr(Constants.Server.STREAM_SEQUENCE).get());
+            ctx.channel().attr(Constants.STREAM_ID).set(streamId);
+            serverChannel.attr(Constants.STREAMS).get().put(streamId, ctx.channel());
+        }
+        send(serverChannel, ctx, MessageType.TYPE_CONNECTED, Unpooled.EMPTY_BUFFER);
+    }
 
-        Meta meta = new Meta(ctx.channel().id().asLongText(), remoteConfig);
-        meta.setServerId(complex.id().asLongText());
+    private void handle(Channel proxyChannel, ChannelHandlerContext ctx, Object httpObject) throws Exception {
+        if (httpObject instanceof ByteBuf) {
+            ByteBuf data = ((ByteBuf) httpObject).retain();
+            int size = data.readableBytes();
+            metrics.received(size);
+            send(proxyChannel, ctx, MessageType.TYPE_DATA, data);
+            StreamUtils.consume(ctx.channel(), proxyChannel, size);
+            return;
+        }
+        List<Object> encode = new ArrayList<>();
+        // 编码器会释放请求,请求的释放仍由调用方负责
+        requestEncoder.encode(ctx, ReferenceCountUtil.retain(httpObject), encode);
+        for (Object obj : encode) {
+            ByteBuf data = (ByteBuf) obj;
+            int size = data.readableBytes();
+            metrics.received(size);
+            send(proxyChannel, ctx, MessageType.TYPE_DATA, data);
+            StreamUtils.consume(ctx.channel(), proxyChannel, size);
+        }
+        if (httpObject instanceof LastHttpContent && !perRequest && Objects.nonNull(ctx.pipeline().get(HttpRequestDecoder.class))) {
+            // 请求体转发完毕,移除解码器后剩余的字节按原始数据继续转发
+            ctx.pipeline().remove(HttpServerExpectContinueHandler.class);
+            ctx.pipeline().remove(HttpRequestDecoder.class);
+        }
+    }
 
+    private void send(Channel complex, ChannelHandlerContext ctx, MessageType typeConnect, ByteBuf data) {
         Message message = new Message();
-        message.setMeta(meta);
+        message.setStreamId(StreamUtils.getStreamId(ctx.channel()));
+        if (typeConnect.hasMeta()) {
+            RemoteConfig remoteConfig = new RemoteConfig();
+            remoteConfig.setProxyType(ProxyType.HTTP);
+            remoteConfig.setDomain(member.getConfig().getDomain());
+            remoteConfig.setPath(member.getConfig().getPath());
+
+            Meta meta = new Meta(ctx.channel().id().asLongText(), remoteConfig);
+            meta.setServerId(complex.id().asLongText());
+            if (MessageType.TYPE_CONNECTED == typeConnect) {
+                meta.setToken(ProxyToken.issue(ctx.channel(), complex));
+            }
+            message.setMeta(meta);
+        }
         message.setData(data);
         message.setType(typeConnect);
+        Optional.ofNullable(ctx.channel().attr(Constants.COMPRESSOR).get()).ifPresent(compressor -> compressor.compress(ctx.alloc(), message));
         complex.writeAndFlush(message);
     }
 }
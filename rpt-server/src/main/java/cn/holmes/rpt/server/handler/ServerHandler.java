@@ -2,15 +2,18 @@ package cn.holmes.rpt.server.handler;
 
 import cn.holmes.rpt.base.executor.MessageExecutor;
 import cn.holmes.rpt.base.executor.MessageExecutorFactory;
+import cn.holmes.rpt.base.metrics.TunnelMetrics;
 import cn.holmes.rpt.base.protocol.Message;
 import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.EventLoopUtils;
+import cn.holmes.rpt.base.utils.StreamUtils;
 import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.concurrent.AbstractEventExecutorGroup;
-import io.netty.util.internal.EmptyArrays;
+import io.netty.handler.ssl.SslHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,19 +32,48 @@ public class ServerHandler extends SimpleChannelInboundHandler<Message> {
     public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
         Channel localChannel = ctx.channel().attr(Constants.LOCAL).get();
         if (Objects.nonNull(localChannel)) {
-            localChannel.config().setAutoRead(ctx.channel().isWritable());
+            StreamUtils.updateAutoRead(localChannel, ctx.channel());
         }
+        StreamUtils.updateAutoRead(ctx.channel());
         super.channelWritabilityChanged(ctx);
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext context, Message message) throws Exception {
+        if (Objects.isNull(context.pipeline().get(SslHandler.class)) && !accept(context, message)) {
+            return;
+        }
         MessageExecutor messageExecutor = MessageExecutorFactory.getMessageExecutor(message.getType());
         if (Objects.nonNull(messageExecutor)) {
             messageExecutor.execute(context, message);
         }
     }
 
+    /**
+     * 未加密的连接只能作为独立代理连接,凭令牌绑定外部连接前忽略转发消息,其他消息直接断开
+     * <p>
+     * 断开通知只作用于自身绑定的外部连接,不按元数据中的编号查找
+     */
+    private boolean accept(ChannelHandlerContext context, Message message) {
+        if (message.getStreamId() == 0) {
+            switch (message.getType()) {
+                case TYPE_KEEPALIVE:
+                case TYPE_CONNECTED:
+                    return true;
+                case TYPE_DISCONNECTED:
+                    return Objects.nonNull(context.channel().attr(Constants.LOCAL).get());
+                case TYPE_DATA:
+                case TYPE_WINDOW_UPDATE:
+                    return Objects.nonNull(context.channel().attr(Constants.Server.LABEL).get());
+                default:
+                    break;
+            }
+        }
+        logger.info("未加密的连接只能作为代理连接,拒绝{}消息,{}", message.getType().getDesc(), context.channel().remoteAddress());
+        context.close();
+        return false;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         ctx.close();
@@ -60,16 +92,22 @@ public class ServerHandler extends SimpleChannelInboundHandler<Message> {
             Channel localChannel = ctx.channel().attr(Constants.LOCAL).getAndSet(null);
             if (Objects.nonNull(localChannel) && localChannel.isActive()) {
                 localChannel.attr(Constants.PROXY).set(null);
-                localChannel.writeAndFlush(EmptyArrays.EMPTY_BYTES).addListener(ChannelFutureListener.CLOSE);
+                EventLoopUtils.execute(localChannel, () -> localChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE));
             }
             return;
         }
         logger.info("服务端-客户端连接中断,{}", clientKey);
+        // 先从负载均衡中摘除,不再分配新的外部连接,再关闭该客户端上的外部连接
         ServerChannelCache.getServerChannelMap().remove(ctx.channel().id().asLongText());
+        // 该秘钥的最后一个控制连接断开后移除穿透统计
+        if (ServerChannelCache.getServerChannelMap().values().stream().noneMatch(channel -> clientKey.equals(channel.attr(Constants.Server.CLIENT_KEY).get()))) {
+            TunnelMetrics.remove(clientKey);
+        }
+        Optional.ofNullable(ctx.channel().attr(Constants.Server.DOMAIN).getAndSet(null)).ifPresent(domainList -> ServerChannelCache.remove(domainList, ctx.channel()));
+        // 线程组为全局共用,只关闭没有其他客户端的端口
+        Optional.ofNullable(ctx.channel().attr(Constants.Server.REMOTE_PORTS).getAndSet(null)).ifPresent(portList -> ServerChannelCache.removePorts(portList, ctx.channel()));
         Optional.ofNullable(ctx.channel().attr(Constants.CHANNELS).getAndSet(null)).ifPresent(this::clear);
-        Optional.ofNullable(ctx.channel().attr(Constants.Server.DOMAIN).getAndSet(null)).ifPresent(ServerChannelCache::remove);
-        Optional.ofNullable(ctx.channel().attr(Constants.Server.REMOTE_BOSS_GROUP).getAndSet(null)).ifPresent(AbstractEventExecutorGroup::shutdownGracefully);
-        Optional.ofNullable(ctx.channel().attr(Constants.Server.REMOTE_WORKER_GROUP).getAndSet(null)).ifPresent(AbstractEventExecutorGroup::shutdownGracefully);
+        ctx.channel().attr(Constants.STREAMS).set(null);
     }
 
     private void clear(Map<String, Channel> channelMap) {
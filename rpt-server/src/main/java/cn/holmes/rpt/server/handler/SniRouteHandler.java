@@ -0,0 +1,61 @@
+package cn.holmes.rpt.server.handler;
+
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.StringUtils;
+import cn.holmes.rpt.server.cache.DomainRoute;
+import cn.holmes.rpt.server.cache.PathTrie;
+import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.AbstractSniHandler;
+import io.netty.util.concurrent.Future;
+
+/**
+ * 读取ClientHello中的SNI选择TLS的处理方式
+ * <p>
+ * 开启透传的域名不在服务端解密,加密数据连同ClientHello直接转发给客户端,由内网服务完成握手;
+ * 其余连接交给服务端证书解密后按HTTP请求处理
+ */
+public class SniRouteHandler extends AbstractSniHandler<PathTrie> {
+
+    /**
+     * 服务端解密时的处理器
+     */
+    private final ChannelHandler terminator;
+
+    public SniRouteHandler(ChannelHandler terminator) {
+        this.terminator = terminator;
+    }
+
+    @Override
+    protected Future<PathTrie> lookup(ChannelHandlerContext ctx, String hostname) throws Exception {
+        PathTrie pathTrie = ServerChannelCache.getDomainTrie().match(hostname);
+        return ctx.executor().newSucceededFuture(pathTrie != null && isPassthrough(pathTrie.single()) ? pathTrie : null);
+    }
+
+    @Override
+    protected void onLookupComplete(ChannelHandlerContext ctx, String hostname, Future<PathTrie> future) throws Exception {
+        PathTrie pathTrie = future.getNow();
+        if (pathTrie == null) {
+            ctx.pipeline().replace(this, null, terminator);
+            return;
+        }
+        // 移除当前处理器时已读取的ClientHello交给下一个处理器
+        ChannelHandler requestHandler = new RequestHandler(pathTrie);
+        ctx.pipeline().replace(this, null, requestHandler);
+        if (Config.getServerConfig().getFlushConsolidation() > 0) {
+            ctx.pipeline().addBefore(ctx.pipeline().context(requestHandler).name(), null, new FlushConsolidationHandler(Config.getServerConfig().getFlushConsolidation(), true));
+        }
+    }
+
+    /**
+     * 需要授权或按路径区分的域名必须在服务端解密
+     */
+    private boolean isPassthrough(DomainRoute route) {
+        if (route == null || !route.getConfig().isPassthrough() || StringUtils.hasText(route.getToken())) {
+            return false;
+        }
+        return route.getPool().isAvailable();
+    }
+}
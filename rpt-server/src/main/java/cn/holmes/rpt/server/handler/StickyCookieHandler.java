@@ -0,0 +1,93 @@
+package cn.holmes.rpt.server.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ByteProcessor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 会话保持: 在新选出的客户端返回的第一个最终响应中写入Cookie,之后的请求据此回到同一客户端
+ * <p>
+ * 响应由客户端原样返回,只在状态行之后插入一行响应头,不解析其余内容;每个外部连接只添加一次,切换客户端时更新待写入的编号
+ */
+public class StickyCookieHandler extends ChannelOutboundHandlerAdapter {
+
+    public static final String COOKIE_NAME = "RPT_ROUTE";
+
+    private static final byte[] HTTP_VERSION = "HTTP/".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 待写入的响应头,为空时原样写出
+     */
+    private byte[] header;
+
+    /**
+     * 下一个最终响应写入该客户端编号,为空时不再写入
+     */
+    public void stick(String id) {
+        this.header = id == null ? null : String.format("Set-Cookie: %s=%s; Path=/; HttpOnly\r\n", COOKIE_NAME, id).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        // 服务端自己的应答不是原始数据,原样写出;响应体的后续部分不以状态行开始,原样写出
+        int status = header != null && msg instanceof ByteBuf ? status((ByteBuf) msg) : -1;
+        if (status < 0) {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (status < 200) {
+            // 1xx是中间响应,Cookie写入之后的最终响应;协议升级后不再有HTTP响应
+            if (status == 101) {
+                header = null;
+            }
+            ctx.write(msg, promise);
+            return;
+        }
+        ByteBuf data = (ByteBuf) msg;
+        byte[] cookie = header;
+        header = null;
+        int lineEnd = data.forEachByte(ByteProcessor.FIND_LF);
+        // 状态行被拆分时放弃写入,下一个请求重新选择
+        if (lineEnd < 0) {
+            ctx.write(data, promise);
+            return;
+        }
+        int length = lineEnd + 1 - data.readerIndex();
+        CompositeByteBuf composite = ctx.alloc().compositeBuffer(3);
+        composite.addComponent(true, data.retainedSlice(data.readerIndex(), length));
+        composite.addComponent(true, ctx.alloc().buffer(cookie.length).writeBytes(cookie));
+        composite.addComponent(true, data.retainedSlice(lineEnd + 1, data.readableBytes() - length));
+        data.release();
+        ctx.write(composite, promise);
+    }
+
+    /**
+     * 读取状态行中的状态码(HTTP/1.1 200 OK),不是状态行时返回-1
+     */
+    private static int status(ByteBuf data) {
+        int index = data.readerIndex();
+        int space = data.bytesBefore((byte) ' ');
+        if (space <= HTTP_VERSION.length || data.readableBytes() < space + 4) {
+            return -1;
+        }
+        for (int i = 0; i < HTTP_VERSION.length; i++) {
+            if (data.getByte(index + i) != HTTP_VERSION[i]) {
+                return -1;
+            }
+        }
+        int status = 0;
+        for (int i = space + 1; i < space + 4; i++) {
+            byte digit = data.getByte(index + i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            status = status * 10 + digit - '0';
+        }
+        return status;
+    }
+}
@@ -0,0 +1,142 @@
+package cn.holmes.rpt.server.page;
+
+import cn.holmes.rpt.base.config.SocketProfile;
+import cn.holmes.rpt.base.metrics.Histogram;
+import cn.holmes.rpt.base.metrics.TunnelMetrics;
+import cn.holmes.rpt.base.protocol.ProbeState;
+import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.base.utils.SocketProfiles;
+import cn.holmes.rpt.base.utils.SslSessions;
+import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Prometheus文本格式的统计
+ * <p>
+ * 穿透按client(秘钥SHA-256摘要的前8位)、type(tcp/http)、tunnel(端口或域名路径)区分;splice转发的字节不经过用户态,不计入流量
+ */
+public class MetricsPage {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * 只导出秘钥摘要的前缀,足以区分客户端且无法还原秘钥
+     */
+    private static final int CLIENT_ID_LENGTH = 8;
+
+    private MetricsPage() {
+    }
+
+    public static String render() {
+        // 每个穿透的标签只计算一次摘要
+        Map<TunnelMetrics, String> tunnels = new LinkedHashMap<>();
+        for (TunnelMetrics tunnel : TunnelMetrics.all()) {
+            tunnels.put(tunnel, labels(tunnel));
+        }
+        StringBuilder builder = new StringBuilder(4096);
+        counter(builder, tunnels, "rpt_tunnel_bytes_received_total", "counter", "从外部连接读取的字节数", TunnelMetrics::getBytesIn);
+        counter(builder, tunnels, "rpt_tunnel_bytes_sent_total", "counter", "写给外部连接的字节数", TunnelMetrics::getBytesOut);
+        counter(builder, tunnels, "rpt_tunnel_connections_total", "counter", "外部连接总数", TunnelMetrics::getConnections);
+        counter(builder, tunnels, "rpt_tunnel_connections_active", "gauge", "当前外部连接数", TunnelMetrics::getActive);
+        counter(builder, tunnels, "rpt_tunnel_connect_failures_total", "counter", "穿透连接建立前断开的外部连接数", TunnelMetrics::getFailures);
+        histogram(builder, tunnels, "rpt_tunnel_connect_seconds", "外部连接分配给客户端到穿透连接建立的耗时", true);
+        histogram(builder, tunnels, "rpt_tunnel_bind_seconds", "收到CONNECTED到外部连接与代理连接完成绑定的耗时", false);
+
+        help(builder, "rpt_clients", "gauge", "已注册的客户端数");
+        builder.append("rpt_clients ").append(ServerChannelCache.getServerChannelMap().size()).append('\n');
+        probes(builder);
+        help(builder, "rpt_tls_handshakes_total", "counter", "TLS握手次数");
+        builder.append("rpt_tls_handshakes_total ").append(SslSessions.getHandshakes()).append('\n');
+        help(builder, "rpt_tls_resumptions_total", "counter", "复用会话的TLS握手次数");
+        builder.append("rpt_tls_resumptions_total ").append(SslSessions.getResumptions()).append('\n');
+        help(builder, "rpt_tls_resumption_ratio", "gauge", "复用会话的握手占全部握手的比例");
+        builder.append("rpt_tls_resumption_ratio ").append(SslSessions.getResumptionRatio()).append('\n');
+        help(builder, "rpt_socket_channels_total", "counter", "按角色和参数组统计的连接数");
+        for (Map.Entry<String, Map<SocketProfile, LongAdder>> role : SocketProfiles.getChannels().entrySet()) {
+            for (Map.Entry<SocketProfile, LongAdder> profile : role.getValue().entrySet()) {
+                builder.append("rpt_socket_channels_total{role=\"").append(escape(role.getKey())).append("\",profile=\"").append(profile.getKey().getDesc()).append("\"} ").append(profile.getValue().sum()).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void counter(StringBuilder builder, Map<TunnelMetrics, String> tunnels, String name, String type, String help, ToLongFunction<TunnelMetrics> value) {
+        help(builder, name, type, help);
+        for (Map.Entry<TunnelMetrics, String> tunnel : tunnels.entrySet()) {
+            builder.append(name).append('{').append(tunnel.getValue()).append("} ").append(value.applyAsLong(tunnel.getKey())).append('\n');
+        }
+    }
+
+    private static void histogram(StringBuilder builder, Map<TunnelMetrics, String> tunnels, String name, String help, boolean connect) {
+        help(builder, name, "histogram", help);
+        for (Map.Entry<TunnelMetrics, String> tunnel : tunnels.entrySet()) {
+            Histogram histogram = connect ? tunnel.getKey().getConnectLatency() : tunnel.getKey().getBindLatency();
+            String labels = tunnel.getValue();
+            long[] cumulative = histogram.cumulative();
+            for (int i = 0; i < Histogram.BUCKETS.length; i++) {
+                builder.append(name).append("_bucket{").append(labels).append(",le=\"").append(Histogram.BUCKETS[i]).append("\"} ").append(cumulative[i]).append('\n');
+            }
+            long count = cumulative[cumulative.length - 1];
+            builder.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+            builder.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSum()).append('\n');
+            builder.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+        }
+    }
+
+    /**
+     * 每个控制连接最近一次探测的往返耗时和连续未应答次数,尚未收到应答的连接不导出往返耗时
+     */
+    private static void probes(StringBuilder builder) {
+        StringBuilder rtt = new StringBuilder();
+        StringBuilder misses = new StringBuilder();
+        for (Channel channel : ServerChannelCache.getServerChannelMap().values()) {
+            ProbeState probeState = channel.attr(Constants.Server.PROBE).get();
+            if (probeState == null) {
+                continue;
+            }
+            String labels = "client=\"" + clientId(channel.attr(Constants.Server.CLIENT_KEY).get()) + "\",channel=\"" + channel.id().asShortText() + '"';
+            if (probeState.getRtt() > 0) {
+                rtt.append("rpt_client_probe_rtt_seconds{").append(labels).append("} ").append(probeState.getRtt() / 1e9).append('\n');
+            }
+            misses.append("rpt_client_probe_misses{").append(labels).append("} ").append(probeState.getMisses()).append('\n');
+        }
+        help(builder, "rpt_client_probe_rtt_seconds", "gauge", "控制连接最近一次探测的往返耗时");
+        builder.append(rtt);
+        help(builder, "rpt_client_probe_misses", "gauge", "控制连接连续未应答探测的次数");
+        builder.append(misses);
+    }
+
+    private static void help(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String labels(TunnelMetrics tunnel) {
+        return "client=\"" + clientId(tunnel.getClientKey()) + "\",type=\"" + tunnel.getProxyType().getDesc() + "\",tunnel=\"" + escape(tunnel.getTunnel()) + '"';
+    }
+
+    /**
+     * 秘钥的SHA-256摘要的前几位
+     */
+    private static String clientId(String clientKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest((clientKey == null ? "" : clientKey).getBytes(StandardCharsets.UTF_8));
+            return ByteBufUtil.hexDump(digest, 0, CLIENT_ID_LENGTH / 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -1,5 +1,7 @@
 package cn.holmes.rpt.server.page;
 
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.utils.Config;
 import cn.holmes.rpt.base.utils.Constants;
 import cn.holmes.rpt.base.utils.StringUtils;
 import io.netty.buffer.ByteBuf;
@@ -21,7 +23,7 @@ public class StaticDispatcher {
 
     private static final Logger logger = LoggerFactory.getLogger(StaticDispatcher.class);
 
-    private static final Map<String, BiConsumer<ChannelHandlerContext, FullHttpRequest>> HANDLE_MAP = new HashMap<>();
+    private static final Map<String, BiConsumer<ChannelHandlerContext, HttpRequest>> HANDLE_MAP = new HashMap<>();
 
     private static final List<String> WHITE_URI = Arrays.asList("/favicon.ico", "/static/base.css");
 
@@ -32,63 +34,84 @@ public class StaticDispatcher {
         HANDLE_MAP.put("/static/base.css", StaticDispatcher::css);
     }
 
-    public static void dispatch(FullHttpRequest fullHttpRequest, ChannelHandlerContext ctx) {
-        String uri = fullHttpRequest.uri();
-        HANDLE_MAP.getOrDefault(uri, StaticDispatcher::notFound).accept(ctx, fullHttpRequest);
+    public static void dispatch(HttpRequest httpRequest, ChannelHandlerContext ctx) {
+        String uri = httpRequest.uri();
+        if (isMetrics(uri)) {
+            String token = Config.getServerConfig().getMetricsToken();
+            // 启动时已校验开启统计必须配置账号密码
+            if (authorize(ctx, httpRequest, token)) {
+                metrics(ctx, httpRequest);
+            }
+            return;
+        }
+        HANDLE_MAP.getOrDefault(uri, StaticDispatcher::notFound).accept(ctx, httpRequest);
     }
 
-    public static boolean authorize(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest, String token) {
-        String authorization = fullHttpRequest.headers().get(HttpHeaderNames.AUTHORIZATION);
+    public static boolean authorize(ChannelHandlerContext ctx, HttpRequest httpRequest, String token) {
+        String authorization = httpRequest.headers().get(HttpHeaderNames.AUTHORIZATION);
         if (StringUtils.hasText(authorization)) {
             authorization = new String(Base64.getDecoder().decode(Constants.BLANK.split(authorization)[1]), StandardCharsets.UTF_8);
             if (Objects.equals(token, authorization)) {
                 return true;
             }
         }
-        String uri = fullHttpRequest.uri();
+        String uri = httpRequest.uri();
         if (!WHITE_URI.contains(uri)) {
-            unauthorized(ctx, fullHttpRequest);
+            unauthorized(ctx, httpRequest);
             return false;
         }
-        dispatch(fullHttpRequest, ctx);
+        dispatch(httpRequest, ctx);
         return false;
     }
 
-    private static void unauthorized(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) {
+    public static boolean isMetrics(String uri) {
+        ServerConfig serverConfig = Config.getServerConfig();
+        return StringUtils.hasText(serverConfig.getMetricsPath()) && Objects.equals(serverConfig.getMetricsPath(), new QueryStringDecoder(uri).path());
+    }
+
+    private static void unauthorized(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.UNAUTHORIZED, page("static/401.html"));
         response.headers().set(HttpHeaderNames.WWW_AUTHENTICATE, "Basic realm=\"Restricted Area\"");
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_HTML);
-        handle(ctx, fullHttpRequest, response);
+        handle(ctx, httpRequest, response);
     }
 
-    private static void favicon(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) {
+    private static void favicon(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         byte[] result = page("static/favicon.ico");
         FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.OK, result);
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, "image/x-icon");
         response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=86400");
-        handle(ctx, fullHttpRequest, response);
+        handle(ctx, httpRequest, response);
     }
 
-    private static void index(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) {
+    private static void index(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         byte[] result = page("static/index.html");
         FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.OK, result);
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_HTML);
-        handle(ctx, fullHttpRequest, response);
+        handle(ctx, httpRequest, response);
     }
 
-    private static void css(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) {
+    private static void css(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         byte[] result = page("static/base.css");
         FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.OK, result);
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_CSS);
         response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=86400");
-        handle(ctx, fullHttpRequest, response);
+        handle(ctx, httpRequest, response);
+    }
+
+    private static void metrics(ChannelHandlerContext ctx, HttpRequest httpRequest) {
+        byte[] result = MetricsPage.render().getBytes(StandardCharsets.UTF_8);
+        FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.OK, result);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, MetricsPage.CONTENT_TYPE);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        handle(ctx, httpRequest, response);
     }
 
-    private static void notFound(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest) {
+    private static void notFound(ChannelHandlerContext ctx, HttpRequest httpRequest) {
         byte[] result = page("static/404.html");
         FullHttpResponse response = buildResponse(ctx, HttpResponseStatus.NOT_FOUND, result);
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_HTML);
-        handle(ctx, fullHttpRequest, response);
+        handle(ctx, httpRequest, response);
     }
 
     private static FullHttpResponse buildResponse(ChannelHandlerContext ctx, HttpResponseStatus status, byte[] result) {
@@ -99,9 +122,9 @@ public class StaticDispatcher {
         return response;
     }
 
-    private static void handle(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest, FullHttpResponse fullHttpResponse) {
+    private static void handle(ChannelHandlerContext ctx, HttpRequest httpRequest, FullHttpResponse fullHttpResponse) {
         ChannelFuture future = ctx.writeAndFlush(fullHttpResponse);
-        if (!HttpUtil.isKeepAlive(fullHttpRequest)) {
+        if (!HttpUtil.isKeepAlive(httpRequest)) {
             future.addListener(ChannelFutureListener.CLOSE);
         }
     }
@@ -0,0 +1,159 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.ProxyType;
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DomainTrieTest {
+
+    private ServerConfig serverConfig;
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private DomainTrie trie;
+
+    @Before
+    public void setUp() {
+        serverConfig = Config.getServerConfig();
+        Config.setServerConfig(new ServerConfig());
+        trie = new DomainTrie();
+    }
+
+    @After
+    public void tearDown() {
+        Config.setServerConfig(serverConfig);
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    @Test
+    public void exactBeatsWildcard() {
+        register("*.domain.com", "key");
+        register("test.domain.com", "key");
+        assertEquals("test.domain.com", match("test.domain.com"));
+        assertEquals("*.domain.com", match("other.domain.com"));
+        // 通配只匹配一级
+        assertNull(match("a.b.domain.com"));
+        assertNull(match("domain.com"));
+    }
+
+    @Test
+    public void wildcardBeatsSuffix() {
+        register(".domain.com", "key");
+        register("*.domain.com", "key");
+        assertEquals("*.domain.com", match("test.domain.com"));
+        assertEquals(".domain.com", match("domain.com"));
+        assertEquals(".domain.com", match("a.test.domain.com"));
+    }
+
+    @Test
+    public void longestSuffix() {
+        register(".domain.com", "key");
+        register(".team.domain.com", "key");
+        assertEquals(".team.domain.com", match("a.team.domain.com"));
+        assertEquals(".team.domain.com", match("team.domain.com"));
+        assertEquals(".domain.com", match("a.other.domain.com"));
+        assertNull(match("domain.org"));
+    }
+
+    @Test
+    public void suffixDoesNotMatchPartialLabel() {
+        register(".domain.com", "key");
+        assertNull(match("mydomain.com"));
+        assertNull(match("com"));
+    }
+
+    @Test
+    public void ignoreCasePortAndTrailingDot() {
+        register("test.domain.com", "key");
+        assertEquals("test.domain.com", match("TEST.Domain.com"));
+        assertEquals("test.domain.com", match("test.domain.com:8080"));
+        assertEquals("test.domain.com", match("test.domain.com.:8080"));
+        assertNull(match("test..com"));
+        assertNull(match(null));
+    }
+
+    /**
+     * 只有一级的后缀和通配会接管所有未注册的域名
+     */
+    @Test
+    public void rejectTopLevelCatchAll() {
+        assertFalse(DomainTrie.isValid(".com"));
+        assertFalse(DomainTrie.isValid("*.com"));
+        assertFalse(DomainTrie.isValid("."));
+        assertFalse(DomainTrie.isValid("*."));
+        assertFalse(DomainTrie.isValid("a..com"));
+        assertFalse(DomainTrie.isValid("*.*.domain.com"));
+        assertTrue(DomainTrie.isValid(".domain.com"));
+        assertTrue(DomainTrie.isValid("*.domain.com"));
+        assertTrue(DomainTrie.isValid("localhost"));
+    }
+
+    @Test
+    public void rejectOtherClientKey() {
+        assertEquals(1, register("test.domain.com", "key"));
+        assertEquals(2, register("test.domain.com", "key"));
+        assertEquals(0, register("test.domain.com", "other"));
+        // 不同路径同样以首个注册的秘钥为准
+        assertEquals(1, register("test.domain.com", "/api", "other"));
+    }
+
+    @Test
+    public void unregisterLastMember() {
+        EmbeddedChannel first = member("key");
+        EmbeddedChannel second = member("key");
+        trie.register(new Member(first, config(".domain.com", null)));
+        trie.register(new Member(second, config(".domain.com", null)));
+        register("test.domain.com", "key");
+
+        trie.unregister(".domain.com", first);
+        assertEquals(".domain.com", match("a.domain.com"));
+        trie.unregister(".domain.com", second);
+        assertNull(match("a.domain.com"));
+        assertEquals("test.domain.com", match("test.domain.com"));
+
+        // 最后一个客户端注销后可由其他秘钥重新注册
+        assertEquals(1, register(".domain.com", "other"));
+        assertEquals(".domain.com", match("a.domain.com"));
+    }
+
+    private String match(String host) {
+        PathTrie pathTrie = trie.match(host);
+        DomainRoute route = pathTrie == null ? null : pathTrie.match(PathTrie.ROOT);
+        return route == null ? null : route.getDomain();
+    }
+
+    private int register(String domain, String clientKey) {
+        return register(domain, null, clientKey);
+    }
+
+    private int register(String domain, String path, String clientKey) {
+        assertTrue(DomainTrie.isValid(domain));
+        return trie.register(new Member(member(clientKey), config(domain, path)));
+    }
+
+    private EmbeddedChannel member(String clientKey) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(Constants.Server.CLIENT_KEY).set(clientKey);
+        channels.add(channel);
+        return channel;
+    }
+
+    static RemoteConfig config(String domain, String path) {
+        RemoteConfig config = new RemoteConfig();
+        config.setProxyType(ProxyType.HTTP);
+        config.setDomain(domain);
+        config.setPath(path);
+        return config;
+    }
+}
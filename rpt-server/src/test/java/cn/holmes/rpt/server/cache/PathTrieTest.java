@@ -0,0 +1,148 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class PathTrieTest {
+
+    private static final String DOMAIN = "test.domain.com";
+
+    private ServerConfig serverConfig;
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private DomainTrie trie;
+
+    @Before
+    public void setUp() {
+        serverConfig = Config.getServerConfig();
+        Config.setServerConfig(new ServerConfig());
+        trie = new DomainTrie();
+    }
+
+    @After
+    public void tearDown() {
+        Config.setServerConfig(serverConfig);
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    @Test
+    public void matchOnSegmentBoundary() {
+        register(null);
+        register("/api");
+        assertEquals("/api", match("/api"));
+        assertEquals("/api", match("/api/"));
+        assertEquals("/api", match("/api/users"));
+        assertEquals("/api", match("/api?x=/apix"));
+        assertEquals("/api", match("/api#top"));
+        assertEquals(PathTrie.ROOT, match("/apix"));
+        assertEquals(PathTrie.ROOT, match("/apis/users"));
+        assertEquals(PathTrie.ROOT, match("/"));
+        assertEquals(PathTrie.ROOT, match("/ap"));
+    }
+
+    @Test
+    public void longestPrefix() {
+        register("/api");
+        register("/api/v2");
+        assertEquals("/api/v2", match("/api/v2/users"));
+        assertEquals("/api", match("/api/v1/users"));
+        assertEquals("/api", match("/api/v2x"));
+        assertEquals("/api", match("//api//users"));
+    }
+
+    @Test
+    public void absoluteUri() {
+        register(null);
+        register("/api");
+        assertEquals("/api", match("http://test.domain.com/api/users"));
+        assertEquals(PathTrie.ROOT, match("http://test.domain.com"));
+        assertEquals(PathTrie.ROOT, match("http://test.domain.com?x=1"));
+    }
+
+    @Test
+    public void noRootRoute() {
+        register("/api");
+        assertNull(match("/other"));
+        assertNull(match("/"));
+        assertNull(trie.match(DOMAIN).single());
+    }
+
+    @Test
+    public void singleOnlyOnRoot() {
+        register(null);
+        assertNotNull(trie.match(DOMAIN).single());
+        register("/api");
+        assertNull(trie.match(DOMAIN).single());
+    }
+
+    @Test
+    public void rejectInvalidPath() {
+        assertTrue(PathTrie.isValid(null));
+        assertTrue(PathTrie.isValid("/"));
+        assertTrue(PathTrie.isValid("/api/v2"));
+        assertFalse(PathTrie.isValid("api"));
+        assertFalse(PathTrie.isValid("/api?x"));
+        assertFalse(PathTrie.isValid("/api#x"));
+        assertFalse(PathTrie.isValid("/api//v2"));
+    }
+
+    @Test
+    public void unregisterLastMember() {
+        EmbeddedChannel api = register("/api");
+        EmbeddedChannel root = register(null);
+        EmbeddedChannel another = member();
+        trie.register(new Member(another, DomainTrieTest.config(DOMAIN, "/api")));
+
+        PathTrie snapshot = trie.match(DOMAIN);
+        DomainRoute route = snapshot.match("/api");
+        trie.unregister(DOMAIN, api);
+        assertSame(route, trie.match(DOMAIN).match("/api/users"));
+        assertFalse(route.getPool().isEmpty());
+
+        trie.unregister(DOMAIN, another);
+        // 路径移除后回到根路径
+        DomainRoute rootRoute = trie.match(DOMAIN).single();
+        assertNotNull(rootRoute);
+        assertSame(rootRoute, trie.match(DOMAIN).match("/api/users"));
+        // 旧快照的结构不变,共用的负载均衡中已没有客户端
+        assertSame(route, snapshot.match("/api"));
+        assertTrue(route.getPool().isEmpty());
+        assertNull(route.getPool().select((String) null));
+
+        trie.unregister(DOMAIN, root);
+        assertNull(trie.match(DOMAIN));
+    }
+
+    /**
+     * @return 匹配到的注册路径,根路径上的注册返回"/",没有匹配时返回null
+     */
+    private String match(String uri) {
+        DomainRoute route = trie.match(DOMAIN).match(uri);
+        return route == null ? null : Optional.ofNullable(route.getConfig().getPath()).orElse(PathTrie.ROOT);
+    }
+
+    private EmbeddedChannel register(String path) {
+        EmbeddedChannel channel = member();
+        assertEquals(1, trie.register(new Member(channel, DomainTrieTest.config(DOMAIN, path))));
+        return channel;
+    }
+
+    private EmbeddedChannel member() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(Constants.Server.CLIENT_KEY).set("key");
+        channels.add(channel);
+        return channel;
+    }
+}
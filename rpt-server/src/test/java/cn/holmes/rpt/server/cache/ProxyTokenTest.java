@@ -0,0 +1,87 @@
+package cn.holmes.rpt.server.cache;
+
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.Constants;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ProxyTokenTest {
+
+    private ServerConfig serverConfig;
+
+    private EmbeddedChannel serverChannel;
+
+    private EmbeddedChannel localChannel;
+
+    @Before
+    public void setUp() {
+        serverConfig = Config.getServerConfig();
+        ServerConfig config = new ServerConfig();
+        config.setPlaintextProxy(true);
+        Config.setServerConfig(config);
+        serverChannel = new EmbeddedChannel();
+        localChannel = new EmbeddedChannel();
+    }
+
+    @After
+    public void tearDown() {
+        Config.setServerConfig(serverConfig);
+        serverChannel.finishAndReleaseAll();
+        localChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void verifyOnce() {
+        String token = ProxyToken.issue(localChannel, serverChannel);
+        assertNotNull(token);
+        assertTrue(ProxyToken.verify(localChannel, token));
+        // 令牌已作废,重放的应答不能再绑定
+        assertFalse(ProxyToken.verify(localChannel, token));
+        assertNull(localChannel.attr(Constants.Server.TOKEN).get());
+    }
+
+    @Test
+    public void rejectWrongToken() {
+        String token = ProxyToken.issue(localChannel, serverChannel);
+        assertFalse(ProxyToken.verify(localChannel, null));
+        assertFalse(ProxyToken.verify(localChannel, ""));
+        assertFalse(ProxyToken.verify(localChannel, token.substring(1)));
+        assertFalse(ProxyToken.verify(localChannel, token.substring(1) + 'x'));
+        // 校验失败不影响客户端的正常应答
+        assertTrue(ProxyToken.verify(localChannel, token));
+    }
+
+    @Test
+    public void rejectReplacedToken() {
+        String token = ProxyToken.issue(localChannel, serverChannel);
+        String newToken = ProxyToken.issue(localChannel, serverChannel);
+        assertNotEquals(token, newToken);
+        assertFalse(ProxyToken.verify(localChannel, token));
+        assertTrue(ProxyToken.verify(localChannel, newToken));
+    }
+
+    @Test
+    public void rejectWithoutIssue() {
+        assertFalse(ProxyToken.verify(localChannel, "token"));
+    }
+
+    @Test
+    public void noTokenWithoutPlaintext() {
+        Config.getServerConfig().setPlaintextProxy(false);
+        assertNull(ProxyToken.issue(localChannel, serverChannel));
+        assertNull(localChannel.attr(Constants.Server.TOKEN).get());
+    }
+
+    @Test
+    public void noTokenForMultiplex() {
+        serverChannel.attr(Constants.STREAMS).set(new ConcurrentHashMap<>());
+        assertNull(ProxyToken.issue(localChannel, serverChannel));
+    }
+}
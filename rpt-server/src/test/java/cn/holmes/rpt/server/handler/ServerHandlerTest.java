@@ -0,0 +1,138 @@
+package cn.holmes.rpt.server.handler;
+
+import cn.holmes.rpt.base.config.ProxyType;
+import cn.holmes.rpt.base.config.RemoteConfig;
+import cn.holmes.rpt.base.config.ServerConfig;
+import cn.holmes.rpt.base.protocol.Message;
+import cn.holmes.rpt.base.protocol.MessageType;
+import cn.holmes.rpt.base.protocol.Meta;
+import cn.holmes.rpt.base.utils.Config;
+import cn.holmes.rpt.base.utils.Constants;
+import cn.holmes.rpt.server.cache.ProxyToken;
+import cn.holmes.rpt.server.cache.ServerChannelCache;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * 未加密的连接只能凭令牌作为独立代理连接
+ */
+public class ServerHandlerTest {
+
+    private ServerConfig serverConfig;
+
+    private EmbeddedChannel serverChannel;
+
+    private EmbeddedChannel localChannel;
+
+    private EmbeddedChannel proxyChannel;
+
+    @Before
+    public void setUp() {
+        serverConfig = Config.getServerConfig();
+        ServerConfig config = new ServerConfig();
+        config.setPlaintextProxy(true);
+        Config.setServerConfig(config);
+        serverChannel = new EmbeddedChannel();
+        localChannel = new EmbeddedChannel();
+        Map<String, Channel> channelMap = new ConcurrentHashMap<>();
+        channelMap.put(localChannel.id().asLongText(), localChannel);
+        serverChannel.attr(Constants.CHANNELS).set(channelMap);
+        ServerChannelCache.getServerChannelMap().put(serverChannel.id().asLongText(), serverChannel);
+        proxyChannel = new EmbeddedChannel(new ServerHandler());
+    }
+
+    @After
+    public void tearDown() {
+        ServerChannelCache.getServerChannelMap().remove(serverChannel.id().asLongText());
+        Config.setServerConfig(serverConfig);
+        proxyChannel.finishAndReleaseAll();
+        localChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void acceptKeepalive() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_KEEPALIVE, null, null));
+        assertTrue(proxyChannel.isOpen());
+    }
+
+    @Test
+    public void rejectRegister() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_REGISTER, new Meta().setClientKey("test-key"), null));
+        assertFalse(proxyChannel.isOpen());
+    }
+
+    @Test
+    public void rejectPing() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_PING, null, Unpooled.buffer(8).writeLong(0)));
+        assertFalse(proxyChannel.isOpen());
+    }
+
+    @Test
+    public void rejectStreamId() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_KEEPALIVE, null, null).setStreamId(1));
+        assertFalse(proxyChannel.isOpen());
+    }
+
+    /**
+     * 绑定前的转发消息直接忽略,不会转发给任何外部连接
+     */
+    @Test
+    public void ignoreDataBeforeBind() {
+        Message message = new Message(MessageType.TYPE_DATA, null, Unpooled.copiedBuffer(new byte[]{1}));
+        proxyChannel.writeInbound(message);
+        assertEquals(0, message.refCnt());
+        assertNull(localChannel.readOutbound());
+    }
+
+    /**
+     * 断开通知不能按元数据中的编号关闭其他外部连接
+     */
+    @Test
+    public void ignoreDisconnectedBeforeBind() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_DISCONNECTED, connectedMeta(null), Unpooled.EMPTY_BUFFER));
+        assertTrue(localChannel.isOpen());
+    }
+
+    @Test
+    public void rejectDisconnectedWithStreamId() {
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_DISCONNECTED, connectedMeta(null), Unpooled.EMPTY_BUFFER).setStreamId(1));
+        assertFalse(proxyChannel.isOpen());
+        assertTrue(localChannel.isOpen());
+    }
+
+    @Test
+    public void rejectWrongToken() {
+        String token = ProxyToken.issue(localChannel, serverChannel);
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_CONNECTED, connectedMeta(token + 'x'), Unpooled.EMPTY_BUFFER));
+        assertFalse(proxyChannel.isOpen());
+        assertNull(proxyChannel.attr(Constants.LOCAL).get());
+        // 令牌仍可由持有它的客户端使用
+        assertEquals(token, localChannel.attr(Constants.Server.TOKEN).get());
+    }
+
+    @Test
+    public void rejectUsedToken() {
+        String token = ProxyToken.issue(localChannel, serverChannel);
+        assertTrue(ProxyToken.verify(localChannel, token));
+        proxyChannel.writeInbound(new Message(MessageType.TYPE_CONNECTED, connectedMeta(token), Unpooled.EMPTY_BUFFER));
+        assertFalse(proxyChannel.isOpen());
+        assertNull(proxyChannel.attr(Constants.LOCAL).get());
+    }
+
+    private Meta connectedMeta(String token) {
+        RemoteConfig remoteConfig = new RemoteConfig();
+        remoteConfig.setProxyType(ProxyType.TCP);
+        remoteConfig.setRemotePort(4389);
+        return new Meta(localChannel.id().asLongText(), remoteConfig).setServerId(serverChannel.id().asLongText()).setToken(token);
+    }
+}